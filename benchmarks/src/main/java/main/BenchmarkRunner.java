@@ -0,0 +1,43 @@
+package main;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class is the entrance of the benchmarks. It takes the usual JMH command line options
+ * (e.g. a benchmark name pattern, or -p maxIterations=500), but writes the results as JSON to
+ * target/jmh-result.json by default, so the results of two versions can be diffed.
+ */
+public class BenchmarkRunner {
+    public static final String defaultResult = "target/jmh-result.json";
+
+    /**
+     * This runs the benchmarks.
+     * Usage: java -jar benchmarks.jar [JMH options]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        try {
+            CommandLineOptions options = new CommandLineOptions(args);
+            ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+            if (!options.getResultFormat().hasValue()) {
+                builder.resultFormat(ResultFormatType.JSON);
+            }
+            if (!options.getResult().hasValue()) {
+                builder.result(defaultResult);
+            }
+            new Runner(builder.build()).run();
+        } catch (CommandLineOptionException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        } catch (RunnerException e) {
+            System.err.println("Benchmarks failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the iteration of a single point by 'MandelbrotCalculator.calcMandel' at representative points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalcMandelBenchmark {
+    /**
+     * This enum stores the points, from the cheapest to the most expensive orbit.
+     */
+    public enum Point {
+        ESCAPING(0.5, 0.5),              // escapes after a few iterations
+        BOUNDARY(-0.7436447860, 0.1318252536), // near the boundary in seahorse valley, escapes late
+        INTERIOR(-0.1, 0.1),             // in the main cardioid, found by the interior check
+        BULB(-0.12, 0.75);               // in a period-3 bulb, only found by the periodicity check
+
+        final double cReal;
+        final double cImaginary;
+
+        Point(double cReal, double cImaginary) {
+            this.cReal = cReal;
+            this.cImaginary = cImaginary;
+        }
+    }
+
+    @Param({"ESCAPING", "BOUNDARY", "INTERIOR", "BULB"})
+    public Point point;
+
+    @Param({"1000"})
+    public int maxIterations;
+
+    @Param({"true", "false"})
+    public boolean checks; // the interior and periodicity checks
+
+    private MandelbrotCalculator mandelCalc;
+
+    @Setup
+    public void setUp() {
+        mandelCalc = new MandelbrotCalculator(1);
+    }
+
+    @Benchmark
+    public int calcMandel() {
+        return mandelCalc.calcMandel(point.cReal, point.cImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, checks, checks);
+    }
+}
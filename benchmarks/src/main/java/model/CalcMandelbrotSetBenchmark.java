@@ -0,0 +1,48 @@
+package model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures 'MandelbrotCalculator.calcMandelbrotSet' over the standard views at several iteration caps,
+ * using every core as the program does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CalcMandelbrotSetBenchmark {
+    @Param({"FULL", "SEAHORSE", "SPIRAL"})
+    public StandardView view;
+
+    @Param({"50", "500", "5000"})
+    public int maxIterations;
+
+    private static final MandelbrotCalculator mandelCalc = new MandelbrotCalculator(); // one pool for every trial of the fork
+    private Viewport viewport;
+    private int[] graph;
+
+    @Setup
+    public void setUp() {
+        viewport = view.getViewport(maxIterations);
+        graph = new int[StandardView.resolution * StandardView.resolution];
+    }
+
+    @Benchmark
+    public int[] calcMandelbrotSet() {
+        return mandelCalc.calcMandelbrotSet(graph, StandardView.resolution, StandardView.resolution, viewport);
+    }
+}
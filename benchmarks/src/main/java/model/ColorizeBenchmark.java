@@ -0,0 +1,68 @@
+package model;
+
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures building a palette and coloring a complete graph with it, as 'Model.draw' does
+ * before the pixels are written to the canvas. The graph is the seahorse valley view at the draw size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorizeBenchmark {
+    @Param({"500", "5000"})
+    public int maxIterations;
+
+    @Param({"1", "4"})
+    public int samplesPerAxis; // 4 also averages the samples of the pixels on edges
+
+    @Param({"#000000", "#ff0000"})
+    public String color; // grey scale and red, which take different branches of 'ColorSet.getColor'
+
+    private Color tone;
+    private RenderSession session;
+    private int[] frame;
+
+    @Setup
+    public void setUp() {
+        tone = Color.valueOf(color);
+        session = new RenderSession(Model.drawSize, Model.drawSize);
+        session.setViewport(StandardView.SEAHORSE.getViewport(maxIterations));
+        session.setColor(tone);
+        session.setSamplesPerAxis(samplesPerAxis);
+        session.render(() -> false);
+        frame = new int[Model.drawSize * Model.drawSize];
+    }
+
+    @Benchmark
+    public int[] buildPalette() {
+        int[] palette = new int[maxIterations + 1]; // the same table as 'ColorSet.getPalette', which would return it from its cache
+        double scale = Model.colorMaxValue / maxIterations;
+        for (int iterations = 0; iterations <= maxIterations; iterations++) {
+            palette[iterations] = ColorSet.getColor(tone, (int) Math.round(iterations * scale));
+        }
+        return palette;
+    }
+
+    @Benchmark
+    public int[] colorize() {
+        session.colorize(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,73 @@
+package model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures saving and loading a session with 'FileOps', in the binary and the old text format.
+ * The graph is the seahorse valley view, which has long runs but few repeated rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileOpsBenchmark {
+    @Param({"mbs", "txt"})
+    public String format;
+
+    private File directory;
+    private File sessionFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mandelbrot-benchmark").toFile();
+        sessionFile = new File(directory, "session." + format);
+        Model.setParameters();
+        Model.currentViewport = StandardView.SEAHORSE.getViewport(500);
+        Model.session.render(Model.currentViewport, 1, false, null, () -> false); // saved from and loaded into the session of the model
+        save(); // for 'load'
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFile.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void save() {
+        sessionFile.delete(); // saved sessions are read-only
+        Model.file = sessionFile;
+        FileOps.writeFile();
+    }
+
+    @Benchmark
+    public Viewport load() {
+        Model.file = sessionFile;
+        FileOps.readFile();
+        return Model.currentViewport;
+    }
+
+    @Benchmark
+    public Viewport roundTrip() {
+        save();
+        return load();
+    }
+}
@@ -0,0 +1,35 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * This enum stores the fixed suite of views the benchmarks render, so results of different versions are comparable.
+ */
+public enum StandardView {
+    FULL("-2.0", "0.7", "-1.25", "1.25"),                   // the initial view, mostly interior and fast escapes
+    SEAHORSE("-0.76", "-0.73", "0.08", "0.11"),             // seahorse valley, long orbits near the boundary
+    SPIRAL("-0.7746806111", "-0.7746806101", "-0.1374168861", "-0.1374168851"); // a deep spiral, still within double precision
+
+    public static final int resolution = 400; // pixels along each axis
+
+    private final BigDecimal minReal;
+    private final BigDecimal maxReal;
+    private final BigDecimal minImaginary;
+    private final BigDecimal maxImaginary;
+
+    StandardView(String minReal, String maxReal, String minImaginary, String maxImaginary) {
+        this.minReal = new BigDecimal(minReal);
+        this.maxReal = new BigDecimal(maxReal);
+        this.minImaginary = new BigDecimal(minImaginary);
+        this.maxImaginary = new BigDecimal(maxImaginary);
+    }
+
+    /**
+     * This gets the view with the given iteration cap.
+     * @param maxIterations The max. iterations.
+     * @return The viewport.
+     */
+    public Viewport getViewport(int maxIterations) {
+        return new Viewport(minReal, maxReal, minImaginary, maxImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+}
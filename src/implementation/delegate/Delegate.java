@@ -13,6 +13,8 @@ import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import model.RenderService;
+import model.Supersampler;
 
 /**
  * This class stores the delegate component of the program.
@@ -27,6 +29,9 @@ public class Delegate {
 
     @FXML public RadioButton pan;
     @FXML public RadioButton showZoom;
+    @FXML public RadioButton antialias;
+    @FXML public RadioButton showMetrics;
+    @FXML public RadioButton autoIterations;
 
     @FXML public Button reset;
     @FXML public Button undo;
@@ -43,8 +48,11 @@ public class Delegate {
     public void initialize() {
         setParameters();
         setTool();
-        setGraph();
-        draw(canvas);
+        renderService = new RenderService(canvas, showZoom, maxIterations);
+        renderService.setKeepIterationState(true); // changing max. iterations continues the previous render
+        renderMetrics.register(); // for JConsole/ VisualVM
+        mandelCalc.setFocus(tileFocus);
+        renderGraph();
     }
 
     /**
@@ -66,21 +74,33 @@ public class Delegate {
         load.setOnAction(actionEvent -> {
             selectFile("Load", false);
             if (file != null) {  // if a file is selected
+                renderService.cancel(); // the loaded graph must not be overwritten by a render in progress
                 readFile();
+                autoIterations.setSelected(false); // the loaded max. iterations are kept, not tuned again
+                isAutoIterations = false;
                 maxIterations.clear();
-                maxIterations.setPromptText(String.valueOf(currentMaxIterations));
-                draw(canvas);
+                maxIterations.setPromptText(String.valueOf(currentViewport.getMaxIterations()));
+                renderGraph(); // the session holds the loaded graph, so it is only colored
             }
         });
 
         selection.setOnMousePressed(mouseEvent -> logPressed(mouseEvent, selectionContext, pan, area));
 
-        selection.setOnMouseDragged(mouseEvent -> logDragged(mouseEvent, selectionContext, pan, area));
+        selection.setOnMouseDragged(mouseEvent -> logDragged(mouseEvent, canvas, selectionContext, pan, area));
+
+        selection.setOnMouseMoved(mouseEvent -> tileFocus.setFocus(mouseEvent.getX() / drawSize, mouseEvent.getY() / drawSize));
+
+        selection.setOnMouseExited(mouseEvent -> tileFocus.centre());
 
         selection.setOnMouseReleased(mouseEvent -> {
-            logReleased(mouseEvent, selectionContext, pan, area);
-            setGraph();
-            draw(canvas);
+            logReleased(mouseEvent, canvas, selectionContext, pan, area);
+            if (pan.isSelected()) {
+                tileFocus.setFocus(mouseEvent.getX() / drawSize, mouseEvent.getY() / drawSize); // the grabbed point is now under the cursor
+                renderGraph(); // the part of the previous graph still in view is moved
+            } else {
+                tileFocus.centre(); // the selected square fills the view
+                renderGraph();
+            }
             setShowZoom(canvas, showZoom);
             if (!isUndo && isOverride) { // if some actions are being undone while the user executed others
                 redoStack.clear();
@@ -99,16 +119,36 @@ public class Delegate {
             undoStack.addElement("ToggleZoom");
         });
 
+        antialias.setOnAction(actionEvent -> {
+            samplesPerAxis = antialias.isSelected() ? Supersampler.maxSamplesPerAxis : 1; // up to 16 samples for pixels on edges
+            renderGraph(); // a cached graph is shown at once, the samples follow
+            setShowZoom(canvas, showZoom);
+        });
+
+        showMetrics.setOnAction(actionEvent -> {
+            isShowMetrics = showMetrics.isSelected();
+            setShowZoom(canvas, showZoom);
+        });
+
+        autoIterations.setOnAction(actionEvent -> {
+            isAutoIterations = autoIterations.isSelected();
+            renderGraph(); // switching off keeps the last chosen max. iterations
+            setShowZoom(canvas, showZoom);
+        });
+
         reset.setOnAction(actionEvent -> {
             setParameters();
-            setGraph(); // update the graph
-            draw(canvas); // display the graph
+            autoIterations.setSelected(false); // the toggles affecting the graph are reset too, before it is rendered
+            isAutoIterations = false;
+            antialias.setSelected(false);
+            samplesPerAxis = 1;
+            renderGraph(); // update and display the graph
             pan.setSelected(false);
             selectionContext.setStroke(Color.WHITE); // it is set here as the graphics context is created here
             showZoom.setSelected(false);
             setShowZoom(canvas, showZoom); // clear magnification bar if needed
             maxIterations.clear();
-            maxIterations.setPromptText(String.valueOf(currentMaxIterations));
+            maxIterations.setPromptText(String.valueOf(currentViewport.getMaxIterations()));
             undoStack.clear(); // reset back to initial status
             redoStack.clear();
         });
@@ -119,8 +159,8 @@ public class Delegate {
 
         colorChoice.setOnAction(actionEvent -> {
             String undo = "Color " + currentColor + " ";
-            setColor();
-            draw(canvas);
+            currentColor = getNextColor(currentColor);
+            renderGraph(); // the session holds the graph, so it is only colored again
             setShowZoom(canvas, showZoom);
             selectionContext.setStroke(currentColor.equals(blackWhite) ? Color.BLACK : Color.WHITE); // use black lines if the background is white
             if (!isUndo && isOverride) {  // if some actions are being undone while the user executed others
@@ -135,22 +175,22 @@ public class Delegate {
         });
 
         changeIterations.setOnAction(actionEvent -> {
-            if (maxIterations.getText().length() > 0 &&
-                    currentMaxIterations != Integer.parseInt(maxIterations.getText())) { // only invoked if a different value is entered
-                String undo = "Iterations " + currentMaxIterations + " ";
-                currentMaxIterations = Integer.parseInt(maxIterations.getText());
-                colorScale = colorMaxValue / currentMaxIterations;
+            if (maxIterations.getText().length() > 0 && Integer.parseInt(maxIterations.getText()) > 0 &&
+                    currentViewport.getMaxIterations() != Integer.parseInt(maxIterations.getText())) { // only invoked if a different valid value is entered
+                String undo = "Iterations " + currentViewport.getMaxIterations() + " ";
+                autoIterations.setSelected(false); // an entered value is kept, not tuned again
+                isAutoIterations = false;
+                currentViewport = currentViewport.withMaxIterations(Integer.parseInt(maxIterations.getText()));
                 maxIterations.clear();
-                maxIterations.setPromptText(String.valueOf(currentMaxIterations));
-                setGraph(); // update the graph
-                draw(canvas); // display the graph
+                maxIterations.setPromptText(String.valueOf(currentViewport.getMaxIterations()));
+                renderGraph(); // update and display the graph
                 setShowZoom(canvas, showZoom); // display magnification if needed
                 if (!isUndo && isOverride) {  // if some actions are being undone while the user executed others
                     redoStack.clear();
                 } else {
                     isOverride = true;
                 }
-                undo += currentMaxIterations;
+                undo += currentViewport.getMaxIterations();
                 undoStack.addElement(undo);
             }
         });
@@ -0,0 +1,256 @@
+package main;
+
+import javafx.scene.paint.Color;
+import model.ColorSet;
+import model.MandelbrotCalculator;
+import model.RenderSession;
+import model.Supersampler;
+import model.Viewport;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static model.Model.drawSize;
+
+/**
+ * This class is the entrance of the headless batch renderer, which needs no display.
+ * It renders every view of a job file to a PNG image. Each line of the job file holds the parameters
+ * saved by 'FileOps' (lines 3 to 9), separated by spaces, optionally followed by the output file name:
+ * minReal maxReal minImaginary maxImaginary maxIterations radiusSquared color [name]
+ * Empty lines and lines starting with '#' are ignored.
+ * The calculation, coloring and encoding of different frames overlap through bounded queues,
+ * so the calculation of the next frame runs while the previous ones are encoded.
+ * The views are calculated by one render session, so a view moved by whole pixels from the previous one
+ * only calculates the uncovered strips.
+ * With supersampling, the pixels on edges get up to 16 samples and the supersampled fraction of each frame is reported.
+ */
+public class BatchRender {
+    private static final int queueSize = 2; // frames waiting between two stages, bounds the memory used
+
+    /**
+     * This stores a view of the job file and its images while they pass through the stages.
+     */
+    private static class Frame {
+        static final Frame end = new Frame(null); // sent after the last frame
+
+        final Job job;
+        int[] iterations;
+        Supersampler samples; // null if not supersampled
+        BufferedImage image;
+
+        Frame(Job job) {
+            this.job = job;
+        }
+    }
+
+    /**
+     * This stores the parameters of a single view.
+     */
+    private static class Job {
+        Viewport viewport;
+        Color color;
+        String name;
+    }
+
+    /**
+     * This renders a job file.
+     * Usage: BatchRender jobFile outputDirectory [--size pixels] [--encoders threads] [--supersample samplesPerAxis]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 2) {
+            System.err.println("Usage: BatchRender <job file> <output directory> [--size pixels] [--encoders threads] [--supersample 1-"
+                    + Supersampler.maxSamplesPerAxis + "]");
+            System.exit(2);
+        }
+        int size = drawSize;
+        int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // PNG encoding is the slowest stage per frame
+        int samplesPerAxis = 1;
+        try {
+            for (int index = 2; index < args.length; index += 2) {
+                if (index + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[index]);
+                }
+                switch (args[index]) {
+                    case "--size":
+                        size = Integer.parseInt(args[index + 1]);
+                        break;
+                    case "--encoders":
+                        encoders = Integer.parseInt(args[index + 1]);
+                        break;
+                    case "--supersample":
+                        samplesPerAxis = Integer.parseInt(args[index + 1]);
+                        if (samplesPerAxis < 1 || samplesPerAxis > Supersampler.maxSamplesPerAxis) {
+                            throw new IllegalArgumentException("Samples per axis must be from 1 to " + Supersampler.maxSamplesPerAxis);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            List<Job> jobs = readJobs(new File(args[0]));
+            File directory = new File(args[1]);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            long start = System.nanoTime();
+            render(jobs, directory, size, encoders, samplesPerAxis);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Rendered %d frames of %dx%d in %.2f s (%.2f fps)%n", jobs.size(), size, size, seconds, jobs.size() / seconds);
+        } catch (Exception e) {
+            System.err.println("Batch render failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This reads the views of a job file.
+     * @param file The job file.
+     * @return The views in file order.
+     * @throws IOException If the file cannot be read or a line is invalid.
+     */
+    private static List<Job> readJobs(File file) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                if (fields.length < 7) {
+                    throw new IllegalArgumentException("7 parameters needed");
+                }
+                Job job = new Job();
+                job.viewport = new Viewport(new BigDecimal(fields[0]), new BigDecimal(fields[1]), new BigDecimal(fields[2]), new BigDecimal(fields[3]),
+                        Integer.parseInt(fields[4]), Double.parseDouble(fields[5])); // validates max. iterations and radius
+                job.color = Color.valueOf(fields[6]);
+                job.name = fields.length > 7 ? fields[7] : String.format("frame-%05d.png", jobs.size());
+                jobs.add(job);
+            } catch (IllegalArgumentException e) { // also NumberFormatException
+                throw new IOException("Invalid job at line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * This renders the views through the calculation, coloring and encoding stages.
+     * The calculation uses every core through the calculator's own pool, while the other stages run on their own threads.
+     * @param jobs The views to be rendered.
+     * @param directory The directory receiving the images.
+     * @param size The width and height of the images.
+     * @param encoders The number of threads encoding images.
+     * @param samplesPerAxis The number of samples along each axis of pixels on edges, 1 for no supersampling.
+     * @throws Exception If any stage failed.
+     */
+    private static void render(List<Job> jobs, File directory, int size, int encoders, int samplesPerAxis) throws Exception {
+        BlockingQueue<int[]> freeBuffers = new ArrayBlockingQueue<>(queueSize + 2); // iteration buffers are reused, images are not as they are encoded concurrently
+        for (int index = 0; index < queueSize + 2; index++) {
+            freeBuffers.add(new int[size * size]);
+        }
+        BlockingQueue<Frame> calculated = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Frame> colored = new ArrayBlockingQueue<>(queueSize);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        RenderSession session = new RenderSession(size, size, new MandelbrotCalculator(), null);
+        session.setSamplesPerAxis(samplesPerAxis);
+
+        Thread calculator = new Thread(() -> {
+            try {
+                for (int number = 0; number < jobs.size() && failure.get() == null; number++) {
+                    Job job = jobs.get(number);
+                    Frame frame = new Frame(job);
+                    frame.iterations = freeBuffers.take();
+                    session.setViewport(job.viewport);
+                    session.render(() -> false);
+                    session.copyGraph(frame.iterations);
+                    if (samplesPerAxis > 1) {
+                        frame.samples = new Supersampler();
+                        session.copySamples(frame.samples);
+                    }
+                    calculated.put(frame);
+                }
+                calculated.put(Frame.end);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "calculate");
+
+        Thread colorer = new Thread(() -> {
+            try {
+                for (Frame frame = calculated.take(); frame != Frame.end; frame = calculated.take()) {
+                    int[] palette = ColorSet.getPalette(frame.job.color, frame.job.viewport.getMaxIterations());
+                    frame.image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+                    int[] pixels = ((DataBufferInt) frame.image.getRaster().getDataBuffer()).getData(); // written directly, no per-pixel calls
+                    for (int index = 0; index < pixels.length; index++) {
+                        pixels[index] = palette[frame.iterations[index]];
+                    }
+                    if (frame.samples != null) {
+                        frame.samples.colorize(pixels, palette, pixels.length);
+                        System.out.printf("%s: supersampled %.1f%% of the pixels%n", frame.job.name, 100 * frame.samples.getFraction());
+                    }
+                    freeBuffers.put(frame.iterations);
+                    frame.iterations = null;
+                    colored.put(frame);
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                for (int index = 0; index < encoders; index++) { // one end marker for every encoder
+                    try {
+                        colored.put(Frame.end);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "color");
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(calculator);
+        threads.add(colorer);
+        for (int index = 0; index < encoders; index++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (Frame frame = colored.take(); frame != Frame.end; frame = colored.take()) {
+                        if (failure.get() == null && !ImageIO.write(frame.image, "png", new File(directory, frame.job.name))) {
+                            throw new IOException("No PNG encoder available");
+                        }
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "encode-" + index));
+        }
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true); // a failed stage must not keep the program alive
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                thread.join(100);
+                if (failure.get() != null) { // stop stages blocked on a queue whose neighbour failed
+                    threads.forEach(Thread::interrupt);
+                }
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
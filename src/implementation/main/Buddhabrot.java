@@ -0,0 +1,149 @@
+package main;
+
+import javafx.scene.paint.Color;
+import model.ColorSet;
+import model.OrbitDensity;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class is the entrance of the headless Buddhabrot renderer.
+ * It samples in rounds of growing size and replaces the image after every round, so it can be watched converging
+ * in any image viewer which reloads the file, and stopped once it looks good enough.
+ */
+public class Buddhabrot {
+    private static final int levels = 256; // brightness levels of the image
+
+    /**
+     * This renders a Buddhabrot.
+     * Usage: Buddhabrot outputFile [--size pixels] [--bounds "minReal maxReal minImaginary maxImaginary"] [--iterations maxIterations]
+     *        [--min-iterations minIterations] [--samples total] [--rounds rounds] [--anti] [--color color] [--seed seed]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.err.println("Usage: Buddhabrot <output file> [--size pixels] [--bounds \"minReal maxReal minImaginary maxImaginary\"]"
+                    + " [--iterations n] [--min-iterations n] [--samples total] [--rounds n] [--anti] [--color c] [--seed s]");
+            System.exit(2);
+        }
+        int size = 1000;
+        double[] bounds = {-2, 1, -1.5, 1.5};
+        int maxIterations = 1000;
+        int minIterations = 0;
+        long total = 100_000_000L;
+        int rounds = 10;
+        boolean isAnti = false;
+        Color color = ColorSet.greyScale;
+        long seed = System.nanoTime();
+        try {
+            for (int index = 1; index < args.length; index += 2) {
+                if (args[index].equals("--anti")) { // the only option without a value
+                    isAnti = true;
+                    index--;
+                    continue;
+                }
+                if (index + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[index]);
+                }
+                String value = args[index + 1];
+                switch (args[index]) {
+                    case "--size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "--bounds":
+                        String[] values = value.trim().split("\\s+");
+                        for (int bound = 0; bound < 4; bound++) {
+                            bounds[bound] = Double.parseDouble(values[bound]);
+                        }
+                        break;
+                    case "--iterations":
+                        maxIterations = Integer.parseInt(value);
+                        break;
+                    case "--min-iterations":
+                        minIterations = Integer.parseInt(value);
+                        break;
+                    case "--samples":
+                        total = Long.parseLong(value);
+                        break;
+                    case "--rounds":
+                        rounds = Integer.parseInt(value);
+                        break;
+                    case "--color":
+                        color = Color.valueOf(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            if (rounds < 1 || total < rounds) {
+                throw new IllegalArgumentException("Rounds must be positive and at most the samples");
+            }
+            render(new File(args[0]), size, bounds, maxIterations, minIterations, total, rounds, isAnti, color, seed);
+        } catch (Exception e) {
+            System.err.println("Buddhabrot failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This samples the rounds and writes the image after each of them.
+     * Each round doubles the samples so far, so the image improves visibly at every update while updates stay cheap.
+     * @param file The image file.
+     * @param size The width and height of the image.
+     * @param bounds The real and imaginary bounds of the view.
+     * @param maxIterations The max. iterations of an orbit.
+     * @param minIterations The fewest iterations of a traced escaping orbit.
+     * @param total The number of points to sample.
+     * @param rounds The number of rounds.
+     * @param isAnti The flag indicating the anti-Buddhabrot is rendered.
+     * @param color The color of the image.
+     * @param seed The seed of the random points.
+     * @throws Exception If sampling failed or the image cannot be written.
+     */
+    private static void render(File file, int size, double[] bounds, int maxIterations, int minIterations, long total, int rounds,
+                               boolean isAnti, Color color, long seed) throws Exception {
+        long start = System.nanoTime();
+        int[] palette = ColorSet.getPalette(color, levels);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        double first = total / (Math.pow(2, rounds) - 1); // the rounds double, adding up to the total
+        try (OrbitDensity density = new OrbitDensity(size, size, bounds[0], bounds[1], bounds[2], bounds[3], maxIterations, minIterations,
+                isAnti, Runtime.getRuntime().availableProcessors(), seed)) {
+            System.out.printf("Most points are sampled near the boundary, %.1f%% of the area%n", 100 * density.getBoundaryFraction());
+            long sampled = 0;
+            for (int round = 0; round < rounds; round++) {
+                long count = round == rounds - 1 ? total - sampled : Math.max(1, Math.round(first * Math.pow(2, round)));
+                density.sample(count);
+                sampled += count;
+                density.colorize(pixels, palette);
+                write(image, file);
+                System.out.printf("Round %d: %d points, %d orbit points, %.2f s%n",
+                        round + 1, density.getSamples(), density.getOrbitPoints(), (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+
+    /**
+     * This replaces the image file, so a viewer never sees a partly written image.
+     * @param image The image.
+     * @param file The image file.
+     * @throws IOException If the image cannot be written.
+     */
+    private static void write(BufferedImage image, File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        if (!ImageIO.write(image, "png", temporary)) {
+            throw new IOException("No PNG encoder available");
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,148 @@
+package main;
+
+import javafx.scene.paint.Color;
+import model.ColorSet;
+import model.MandelbrotCalculator;
+import model.PngBandWriter;
+import model.Viewport;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class is the entrance of the headless poster export, which writes a PNG image of any size.
+ * The image is calculated band by band, each band using every core, and the finished bands are colored and
+ * compressed on other threads while the next band is calculated. Only a few bands are in memory at once,
+ * whatever the size of the image. An interrupted export is resumed from its last complete band by running it again.
+ */
+public class PosterExport {
+    private static final int defaultBandHeight = 64;
+
+    /**
+     * This exports a poster.
+     * Usage: PosterExport outputFile width height [--bounds "minReal maxReal minImaginary maxImaginary"]
+     *        [--iterations maxIterations] [--radius radiusSquared] [--color color] [--band rows] [--encoders threads]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: PosterExport <output file> <width> <height> [--bounds \"minReal maxReal minImaginary maxImaginary\"]"
+                    + " [--iterations n] [--radius r2] [--color c] [--band rows] [--encoders threads]");
+            System.exit(2);
+        }
+        Viewport viewport = Viewport.initial();
+        Color color = ColorSet.greyScale;
+        int bandHeight = defaultBandHeight;
+        int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // compression is slower than calculation for shallow views
+        try {
+            int width = Integer.parseInt(args[1]);
+            int height = Integer.parseInt(args[2]);
+            for (int index = 3; index < args.length; index += 2) {
+                if (index + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[index]);
+                }
+                String value = args[index + 1];
+                switch (args[index]) {
+                    case "--bounds":
+                        viewport = Viewport.parse(value, viewport.getMaxIterations(), viewport.getRadiusSquared());
+                        break;
+                    case "--iterations":
+                        viewport = viewport.withMaxIterations(Integer.parseInt(value));
+                        break;
+                    case "--radius":
+                        viewport = new Viewport(viewport.getMinReal(), viewport.getMaxReal(), viewport.getMinImaginary(), viewport.getMaxImaginary(),
+                                viewport.getMaxIterations(), Double.parseDouble(value));
+                        break;
+                    case "--color":
+                        color = Color.valueOf(value);
+                        break;
+                    case "--band":
+                        bandHeight = Integer.parseInt(value);
+                        break;
+                    case "--encoders":
+                        encoders = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            if (encoders < 1) {
+                throw new IllegalArgumentException("Encoders must be positive");
+            }
+            File file = new File(args[0]);
+            long start = System.nanoTime();
+            int rows = export(file, width, height, viewport, color, bandHeight, encoders);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Wrote %d rows of %dx%d in %.2f s (%.2f Mpixels/s), %d bytes%n",
+                    rows, width, height, seconds, (double) rows * width / seconds / 1e6, file.length());
+        } catch (Exception e) {
+            System.err.println("Poster export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This calculates the bands not yet written and writes them in order.
+     * A band buffer holds the iterations of a band, is colored in place and returned once the band is compressed,
+     * so the number of buffers bounds the memory used.
+     * @param file The PNG file.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param viewport The view shown by the image.
+     * @param color The color of the image.
+     * @param bandHeight The number of rows of each band.
+     * @param encoders The number of threads compressing bands.
+     * @return The number of rows written, fewer than the height if resumed.
+     * @throws Exception If a band cannot be written.
+     */
+    private static int export(File file, int width, int height, Viewport viewport, Color color, int bandHeight, int encoders) throws Exception {
+        MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+        IntBinaryOperator pixel = mandelCalc.getPixelFunction(width, height, viewport); // one reference orbit for every band
+        int[] palette = ColorSet.getPalette(color, viewport.getMaxIterations());
+        BlockingQueue<int[]> freeBuffers = new ArrayBlockingQueue<>(encoders + 1);
+        ExecutorService encoder = Executors.newFixedThreadPool(encoders);
+        Deque<Future<PngBandWriter.Band>> encoding = new ArrayDeque<>();
+
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, viewport + "\ncolor " + color)) {
+            int bands = writer.getBands();
+            if (writer.getNextBand() > 0) {
+                System.out.printf("Resuming after band %d of %d%n", writer.getNextBand(), bands);
+            }
+            for (int index = 0; index < encoders + 1; index++) {
+                freeBuffers.add(new int[width * bandHeight]);
+            }
+            int firstRow = writer.getNextBand() * bandHeight;
+            for (int band = writer.getNextBand(); band < bands; band++) {
+                int yStart = band * bandHeight;
+                int rows = Math.min(bandHeight, height - yStart);
+                boolean isLast = band == bands - 1;
+                int[] buffer = freeBuffers.take(); // waits while every buffer is being compressed
+                mandelCalc.calcMandelbrotBand(buffer, width, yStart, yStart + rows, pixel, () -> false);
+                encoding.add(encoder.submit(() -> {
+                    for (int index = 0; index < width * rows; index++) {
+                        buffer[index] = palette[buffer[index]];
+                    }
+                    PngBandWriter.Band encoded = PngBandWriter.encode(buffer, width, rows, isLast);
+                    freeBuffers.add(buffer);
+                    return encoded;
+                }));
+                while (!encoding.isEmpty() && (encoding.size() > encoders || encoding.peek().isDone())) {
+                    writer.write(encoding.remove().get()); // in order, rethrows a failed compression
+                }
+            }
+            while (!encoding.isEmpty()) {
+                writer.write(encoding.remove().get());
+            }
+            return height - firstRow;
+        } finally {
+            encoder.shutdownNow();
+        }
+    }
+}
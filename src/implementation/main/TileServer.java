@@ -0,0 +1,295 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javafx.scene.paint.Color;
+import model.ColorSet;
+import model.MandelbrotCalculator;
+import model.TileCache;
+import model.Viewport;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntBinaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is the entrance of the local tile server, which serves the set to web map viewers without the desktop program.
+ * GET /tiles/z/x/y.png returns a PNG tile of a quadtree pyramid: level z has 2^z x 2^z tiles covering the square
+ * from -2.75 - 2i to 1.25 + 2i, with row 0 at the lower imaginary bound as in the program. GET / returns a viewer page.
+ * Tiles are stored in a 'TileCache', so each is rendered once, even across restarts. Concurrent requests for a tile
+ * which is being rendered wait for that render instead of starting another one.
+ * The server only listens on the loopback address.
+ * The viewer page is not self-contained: the browser loads Leaflet 1.9.4 (leaflet.js and leaflet.css) from the unpkg CDN,
+ * so it needs internet access. For offline use, --leaflet points the page to another copy, e.g. one served next to it.
+ */
+public class TileServer {
+    public static final int tileSize = 256;
+    private static final BigDecimal worldMinReal = new BigDecimal("-2.75");
+    private static final BigDecimal worldMinImaginary = new BigDecimal("-2");
+    private static final BigDecimal worldSize = new BigDecimal("4");
+    public static final String defaultLeafletUrl = "https://unpkg.com/leaflet@1.9.4/dist"; // the directory holding leaflet.js and leaflet.css
+    private static final Pattern tilePath = Pattern.compile("/tiles/(\\d{1,2})/(\\d{1,5})/(\\d{1,5})\\.png");
+
+    private final TileCache cache;
+    private final MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+    private final ExecutorService renderers; // bounds the number of tiles rendered at once
+    private final ConcurrentHashMap<Long, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>(); // tiles being rendered, by address
+    private final int maxIterations;
+    private final int[] palette;
+    private final String leafletUrl;
+
+    // statistics
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * This creates a server for a tile cache.
+     * @param cache The cache storing the tiles.
+     * @param maxIterations The max. iterations of the tiles.
+     * @param color The color of the tiles.
+     * @param renderThreads The number of tiles rendered at once.
+     * @param leafletUrl The directory the viewer page loads leaflet.js and leaflet.css from.
+     */
+    public TileServer(TileCache cache, int maxIterations, Color color, int renderThreads, String leafletUrl) {
+        this.cache = cache;
+        this.leafletUrl = leafletUrl;
+        this.maxIterations = maxIterations;
+        palette = ColorSet.getPalette(color, maxIterations);
+        renderers = Executors.newFixedThreadPool(renderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "render-tile");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This runs the tile server until it is stopped.
+     * Usage: TileServer cacheDirectory [--port port] [--iterations maxIterations] [--color color] [--max-zoom level] [--threads renderThreads]
+     * [--leaflet url]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.err.println("Usage: TileServer <cache directory> [--port p] [--iterations n] [--color c] [--max-zoom z] [--threads t] [--leaflet url]");
+            System.exit(2);
+        }
+        int port = 8080;
+        int maxIterations = 500;
+        Color color = ColorSet.greyScale;
+        int maxZoom = 12;
+        int renderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // each render also uses the calculator's pool
+        String leafletUrl = defaultLeafletUrl;
+        try {
+            for (int index = 1; index < args.length; index += 2) {
+                if (index + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[index]);
+                }
+                String value = args[index + 1];
+                switch (args[index]) {
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--iterations":
+                        maxIterations = Integer.parseInt(value);
+                        break;
+                    case "--color":
+                        color = Color.valueOf(value);
+                        break;
+                    case "--max-zoom":
+                        maxZoom = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        renderThreads = Integer.parseInt(value);
+                        break;
+                    case "--leaflet":
+                        leafletUrl = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            if (maxIterations < 1 || renderThreads < 1) {
+                throw new IllegalArgumentException("Iterations and threads must be positive");
+            }
+            TileCache cache = new TileCache(new File(args[0]), maxZoom,
+                    "tileSize " + tileSize + "\nmaxIterations " + maxIterations + "\ncolor " + color);
+            TileServer tileServer = new TileServer(cache, maxIterations, color, renderThreads, leafletUrl);
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/", tileServer::handle);
+            server.setExecutor(Executors.newCachedThreadPool()); // requests mostly wait for renders or the disk
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(0);
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    System.err.println("Cannot close the tile cache: " + e.getMessage());
+                }
+                System.out.printf("Rendered %d tiles, %d requests waited for a render in progress, %d cache hits%n",
+                        tileServer.rendered.get(), tileServer.coalesced.get(), cache.getHits());
+            }));
+            server.start();
+            System.out.println("Serving tiles on http://localhost:" + port + "/");
+        } catch (Exception e) {
+            System.err.println("Tile server failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This gets a tile from the cache, or renders and stores it. Concurrent calls for a tile share one render.
+     * @param zoom The level.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The PNG tile.
+     * @throws IOException If the tile cannot be rendered or stored.
+     * @throws InterruptedException If interrupted while waiting for the render.
+     */
+    public byte[] getTile(int zoom, int x, int y) throws IOException, InterruptedException {
+        byte[] tile = cache.get(zoom, x, y);
+        if (tile != null) {
+            return tile;
+        }
+        long address = (long) zoom << 48 | (long) x << 24 | y;
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> render = rendering.putIfAbsent(address, created);
+        if (render == null) { // this request renders the tile
+            render = created;
+            CompletableFuture<byte[]> result = created;
+            renderers.execute(() -> {
+                try {
+                    byte[] stored = cache.get(zoom, x, y); // a render may have finished between the lookup and registering this one
+                    if (stored == null) {
+                        stored = render(zoom, x, y);
+                        cache.put(zoom, x, y, stored);
+                        rendered.incrementAndGet();
+                    }
+                    result.complete(stored);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    rendering.remove(address, result); // after it is stored, so later requests find it in the cache
+                }
+            });
+        } else {
+            coalesced.incrementAndGet();
+        }
+        try {
+            return render.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot render tile " + zoom + "/" + x + "/" + y, e.getCause());
+        }
+    }
+
+    /**
+     * This renders and encodes a tile.
+     * @param zoom The level.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The PNG tile.
+     */
+    private byte[] render(int zoom, int x, int y) {
+        BigDecimal size = worldSize.divide(BigDecimal.valueOf(1L << zoom)); // exact
+        BigDecimal minReal = worldMinReal.add(size.multiply(BigDecimal.valueOf(x)));
+        BigDecimal minImaginary = worldMinImaginary.add(size.multiply(BigDecimal.valueOf(y)));
+        Viewport view = new Viewport(minReal, minReal.add(size), minImaginary, minImaginary.add(size), maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        IntBinaryOperator pixel = mandelCalc.getPixelFunction(tileSize, tileSize, view); // neighbouring tiles continue each other's pixel grid
+        int[] iterations = new int[tileSize * tileSize];
+        mandelCalc.calcMandelbrotRegion(iterations, tileSize, tileSize, 0, 0, tileSize, tileSize, pixel, () -> false);
+
+        BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = palette[iterations[index]];
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * This answers a request for a tile or the viewer page.
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Matcher matcher = tilePath.matcher(path);
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Only GET is supported".getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/")) {
+                send(exchange, 200, "text/html; charset=utf-8", getViewerPage().getBytes(StandardCharsets.UTF_8));
+            } else if (matcher.matches() && cache.contains(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)))) {
+                byte[] tile = getTile(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+                exchange.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable"); // a tile never changes
+                send(exchange, 200, "image/png", tile);
+            } else {
+                send(exchange, 404, "text/plain", "No such tile".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "text/plain", "Interrupted".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) { // the details stay in the log, and the message may be null anyway
+            System.err.println("Cannot serve " + exchange.getRequestURI() + ": " + e);
+            send(exchange, 500, "text/plain", "Cannot render the tile".getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This sends a response.
+     * @param exchange The request and its response.
+     * @param status The HTTP status.
+     * @param type The content type.
+     * @param body The content.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * @return A page showing the tiles with Leaflet, which is loaded from 'leafletUrl'.
+     */
+    private String getViewerPage() {
+        return "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Mandelbrot Set Explorer</title>\n"
+                + "<link rel=\"stylesheet\" href=\"" + leafletUrl + "/leaflet.css\">\n"
+                + "<script src=\"" + leafletUrl + "/leaflet.js\"></script>\n"
+                + "<style>html, body, #map { height: 100%; margin: 0; background: #000; }</style></head>\n"
+                + "<body><div id=\"map\"></div><script>\n"
+                + "var map = L.map('map', {crs: L.CRS.Simple, minZoom: 0, maxZoom: " + cache.getMaxZoom() + "});\n"
+                + "var bounds = [[-" + tileSize + ", 0], [0, " + tileSize + "]];\n"
+                + "L.tileLayer('/tiles/{z}/{x}/{y}.png', {tileSize: " + tileSize + ", noWrap: true, bounds: bounds}).addTo(map);\n"
+                + "map.fitBounds(bounds);\n"
+                + "</script></body></html>\n";
+    }
+}
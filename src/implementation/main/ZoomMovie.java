@@ -0,0 +1,263 @@
+package main;
+
+import javafx.scene.paint.Color;
+import model.ColorSet;
+import model.MandelbrotCalculator;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntBinaryOperator;
+
+import static model.Model.drawSize;
+
+/**
+ * This class is the entrance of the headless zoom movie renderer.
+ * It writes numbered PNG frames zooming exponentially towards a point, from a start width to an end width.
+ * Only keyframes are calculated: one for every halving of the width, with twice the resolution of the frames
+ * in each direction. The frames in between are resampled from the keyframe, which always has at least
+ * one pixel per frame pixel. Keyframes are centred on the target, so the pixels of each keyframe with
+ * even coordinates are the central pixels of the previous one and are copied instead of calculated.
+ */
+public class ZoomMovie {
+    private static final int queueSize = 4; // frames waiting to be encoded, bounds the memory used
+
+    /**
+     * This renders a zoom movie.
+     * Usage: ZoomMovie centreReal centreImaginary startWidth endWidth outputDirectory
+     *        [--size pixels] [--frames framesPerHalving] [--iterations maxIterations] [--radius radiusSquared] [--color color]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 5) {
+            System.err.println("Usage: ZoomMovie <centre real> <centre imaginary> <start width> <end width> <output directory>"
+                    + " [--size pixels] [--frames per halving] [--iterations n] [--radius r2] [--color c]");
+            System.exit(2);
+        }
+        int size = drawSize;
+        int framesPerHalving = 30;
+        int maxIterations = MandelbrotCalculator.INITIAL_MAX_ITERATIONS;
+        double radiusSquared = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+        Color color = ColorSet.greyScale;
+        try {
+            for (int index = 5; index < args.length; index += 2) {
+                if (index + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[index]);
+                }
+                String value = args[index + 1];
+                switch (args[index]) {
+                    case "--size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "--frames":
+                        framesPerHalving = Integer.parseInt(value);
+                        break;
+                    case "--iterations":
+                        maxIterations = Integer.parseInt(value);
+                        break;
+                    case "--radius":
+                        radiusSquared = Double.parseDouble(value);
+                        break;
+                    case "--color":
+                        color = Color.valueOf(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+            if (size < 2 || size % 2 != 0 || framesPerHalving < 1 || maxIterations < 1) {
+                throw new IllegalArgumentException("The size must be even, frames and iterations positive");
+            }
+            BigDecimal startWidth = new BigDecimal(args[2]);
+            BigDecimal endWidth = new BigDecimal(args[3]);
+            if (startWidth.signum() <= 0 || endWidth.signum() <= 0 || endWidth.compareTo(startWidth) > 0) {
+                throw new IllegalArgumentException("The widths must be positive and the end width at most the start width");
+            }
+            File directory = new File(args[4]);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            double halvings = Math.log(startWidth.doubleValue() / endWidth.doubleValue()) / Math.log(2);
+            int frames = (int) Math.round(halvings * framesPerHalving) + 1;
+
+            long start = System.nanoTime();
+            long calculated = render(new BigDecimal(args[0]), new BigDecimal(args[1]), startWidth, frames, framesPerHalving,
+                    size, maxIterations, radiusSquared, color, directory);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Rendered %d frames of %dx%d in %.2f s (%.2f fps), calculated %.1f%% of the pixels of full frames%n",
+                    frames, size, size, seconds, frames / seconds, 100.0 * calculated / ((double) frames * size * size));
+        } catch (Exception e) {
+            System.err.println("Zoom movie failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This renders the keyframes and writes the frames resampled from them.
+     * @param centreReal The real component of the point zoomed into.
+     * @param centreImaginary The imaginary component of the point zoomed into.
+     * @param startWidth The width of the first frame.
+     * @param frames The number of frames.
+     * @param framesPerHalving The number of frames until the width is halved.
+     * @param size The width and height of the frames in pixels.
+     * @param maxIterations The max. iterations.
+     * @param radiusSquared The square of the escape radius.
+     * @param color The color of the frames.
+     * @param directory The directory receiving the frames.
+     * @return The number of pixels calculated.
+     * @throws Exception If a frame cannot be written.
+     */
+    private static long render(BigDecimal centreReal, BigDecimal centreImaginary, BigDecimal startWidth, int frames, int framesPerHalving,
+                               int size, int maxIterations, double radiusSquared, Color color, File directory) throws Exception {
+        MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+        int keySize = 2 * size;
+        int[] keyframe = new int[keySize * keySize];
+        int[] previous = new int[keySize * keySize];
+        int[] colored = new int[keySize * keySize];
+        int[] palette = ColorSet.getPalette(color, maxIterations);
+        BigDecimal step = startWidth.divide(BigDecimal.valueOf(keySize), MathContext.DECIMAL128);
+        long calculated = 0;
+
+        // encoding runs on other threads; when the queue is full the renderer encodes itself, which bounds memory
+        int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ExecutorService encoder = new ThreadPoolExecutor(encoders, encoders, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<?>> written = new ArrayList<>();
+        try {
+            int keyframes = (frames - 1) / framesPerHalving + 1;
+            for (int key = 0; key < keyframes; key++) {
+                IntBinaryOperator pixel = mandelCalc.getCentredPixelFunction(keySize, keySize, centreReal, centreImaginary, step, maxIterations, radiusSquared);
+                if (key > 0) {
+                    int[] last = previous;
+                    int quarter = keySize / 4;
+                    IntBinaryOperator calculate = pixel;
+                    pixel = (x, y) -> (x & 1) == 0 && (y & 1) == 0
+                            ? last[(y / 2 + quarter) * keySize + x / 2 + quarter] // the same C at twice the step
+                            : calculate.applyAsInt(x, y);
+                    calculated += (long) keySize * keySize - (long) size * size;
+                } else {
+                    calculated += (long) keySize * keySize;
+                }
+                mandelCalc.calcMandelbrotRegion(keyframe, keySize, keySize, 0, 0, keySize, keySize, pixel, () -> false);
+                for (int index = 0; index < keyframe.length; index++) {
+                    colored[index] = palette[keyframe[index]];
+                }
+
+                for (int frame = key * framesPerHalving; frame < Math.min(frames, (key + 1) * framesPerHalving); frame++) {
+                    double zoom = Math.pow(2, (frame - key * framesPerHalving) / (double) framesPerHalving); // from 1 to below 2
+                    BufferedImage image = resample(colored, keySize, size, zoom);
+                    File output = new File(directory, String.format("frame-%05d.png", frame));
+                    written.add(encoder.submit(() -> {
+                        try {
+                            ImageIO.write(image, "png", output);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+
+                int[] swap = previous; // the keyframe is kept for the next one
+                previous = keyframe;
+                keyframe = swap;
+                step = step.divide(BigDecimal.valueOf(2)); // exact
+            }
+            for (Future<?> future : written) {
+                future.get(); // rethrows the first failed write
+            }
+        } finally {
+            encoder.shutdownNow();
+        }
+        return calculated;
+    }
+
+    /**
+     * This resamples the centre of a keyframe to a frame by averaging the keyframe pixels under each frame pixel.
+     * Frame pixel u is centred on keyframe position keySize / 2 + (u - size / 2) * scale, where scale = keySize / (size * zoom).
+     * @param colored The colored keyframe (ARGB).
+     * @param keySize The width and height of the keyframe.
+     * @param size The width and height of the frame.
+     * @param zoom The zoom of the frame relative to the keyframe, from 1 to 2.
+     * @return The frame.
+     */
+    private static BufferedImage resample(int[] colored, int keySize, int size, double zoom) {
+        double scale = keySize / (size * zoom); // keyframe pixels per frame pixel, from 1 to 2
+        // each frame pixel covers at most 3 keyframe pixels along each axis
+        int[] first = new int[size];
+        double[][] weights = new double[size][3];
+        for (int u = 0; u < size; u++) {
+            double from = keySize / 2.0 + (u - 0.5 - size / 2.0) * scale + 0.5; // in keyframe pixel edges
+            double to = from + scale;
+            first[u] = (int) Math.floor(from);
+            double total = 0;
+            for (int offset = 0; offset < 3; offset++) {
+                int index = first[u] + offset;
+                double overlap = Math.min(to, index + 1) - Math.max(from, index);
+                weights[u][offset] = overlap > 0 && index >= 0 && index < keySize ? overlap : 0; // the outermost frame pixels reach half a pixel beyond the keyframe
+                total += weights[u][offset];
+            }
+            for (int offset = 0; offset < 3; offset++) {
+                weights[u][offset] /= total;
+            }
+        }
+
+        // horizontal pass over the rows the frame covers, then vertical pass, one color channel at a time
+        int rowStart = Math.max(0, first[0]);
+        int rowEnd = Math.min(keySize, first[size - 1] + 3);
+        float[][] rows = new float[3][(rowEnd - rowStart) * size];
+        for (int y = rowStart; y < rowEnd; y++) {
+            int row = y * keySize;
+            int target = (y - rowStart) * size;
+            for (int u = 0; u < size; u++) {
+                float red = 0;
+                float green = 0;
+                float blue = 0;
+                for (int offset = 0; offset < 3; offset++) {
+                    double weight = weights[u][offset];
+                    if (weight > 0) {
+                        int argb = colored[row + first[u] + offset];
+                        red += weight * ((argb >> 16) & 0xff);
+                        green += weight * ((argb >> 8) & 0xff);
+                        blue += weight * (argb & 0xff);
+                    }
+                }
+                rows[0][target + u] = red;
+                rows[1][target + u] = green;
+                rows[2][target + u] = blue;
+            }
+        }
+
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int v = 0; v < size; v++) {
+            int target = v * size;
+            for (int u = 0; u < size; u++) {
+                int rgb = 0;
+                for (int channel = 0; channel < 3; channel++) {
+                    double value = 0;
+                    for (int offset = 0; offset < 3; offset++) {
+                        double weight = weights[v][offset];
+                        if (weight > 0) {
+                            value += weight * rows[channel][(first[v] + offset - rowStart) * size + u];
+                        }
+                    }
+                    rgb = (rgb << 8) | Math.min(255, (int) Math.round(value));
+                }
+                pixels[target + u] = rgb;
+            }
+        }
+        return image;
+    }
+}
@@ -3,9 +3,10 @@ package model;
 import javafx.scene.paint.Color;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static model.Model.colorMaxValue;
-import static model.Model.currentColor;
 
 /**
  * This class stores the list of colors used in the program and related methods.
@@ -21,14 +22,43 @@ public class ColorSet {
     public static final Color pink = Color.rgb(255, 0, 255);
     public static final Color[] colorSet = {blackWhite, greyScale, red, green, blue, yellow, cyan, pink};
 
+    private static final int paletteCacheSize = 16; // enough for every color at a couple of iteration settings
+    private static final Map<String, int[]> paletteCache = new LinkedHashMap<>(paletteCacheSize, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > paletteCacheSize;
+        }
+    };
 
     /**
-     * This changes the displayed color to the adjacent one.
+     * This gets the color adjacent to the given one, so the displayed color can be cycled.
+     * @param tone The displayed color.
+     * @return The next color of the set.
      */
-    public static void setColor() {
-        int index = Arrays.asList(colorSet).indexOf(currentColor);
-        index = (index + 1) % colorSet.length;
-        currentColor = colorSet[index];
+    public static Color getNextColor(Color tone) {
+        int index = Arrays.asList(colorSet).indexOf(tone);
+        return colorSet[(index + 1) % colorSet.length];
+    }
+
+    /**
+     * This gets the lookup table mapping every iteration count to its color.
+     * Each table is built once per color and max. iterations and then reused.
+     * @param tone The original color used as reference.
+     * @param maxIterations The max. iterations of the graph to be colored.
+     * @return The colors (in ARGB format) indexed by iteration count, from 0 to maxIterations.
+     */
+    public static synchronized int[] getPalette(Color tone, int maxIterations) {
+        String key = tone + " " + maxIterations;
+        int[] palette = paletteCache.get(key);
+        if (palette == null) {
+            double scale = colorMaxValue / maxIterations; // the color value of one iteration
+            palette = new int[maxIterations + 1];
+            for (int iterations = 0; iterations <= maxIterations; iterations++) {
+                palette[iterations] = getColor(tone, (int) Math.round(iterations * scale));
+            }
+            paletteCache.put(key, palette);
+        }
+        return palette;
     }
 
     /**
@@ -36,20 +66,24 @@ public class ColorSet {
      * different predefined rules.
      * @param tone The original color used as reference.
      * @param colorValue The value for the color (in sRGB format).
+     * @return The color of the pixel (in ARGB format).
      */
-    public static void getColor(Color tone, int colorValue) {
+    public static int getColor(Color tone, int colorValue) {
+        int rValue;
+        int gValue;
+        int bValue;
         if (tone.equals(blackWhite)) {
             colorValue = colorValue == colorMaxValue ? 0 : (int) colorMaxValue; // only pixels reaching max. iterations are black, else are white
-            currentColor = Color.rgb(colorValue, colorValue, colorValue);
-        }else if (tone.equals(greyScale)) {
+            rValue = gValue = bValue = colorValue;
+        } else if (tone.equals(greyScale)) {
             colorValue = colorValue == colorMaxValue ? 0 : colorValue; // pixels not reaching max. iterations are in grey scale
-            currentColor = Color.rgb(colorValue, colorValue, colorValue);
+            rValue = gValue = bValue = colorValue;
         } else {
             colorValue = colorValue == colorMaxValue ? 0 : colorValue; // pixels not reaching max. iterations are in linear scale
-            int rValue = tone.getRed() == 0.0 ? 0 : colorValue;
-            int gValue = tone.getGreen() == 0.0 ? 0 : colorValue;
-            int bValue = tone.getBlue() == 0.0 ? 0 : colorValue;
-            currentColor = Color.rgb(rValue, gValue, bValue);
+            rValue = tone.getRed() == 0.0 ? 0 : colorValue;
+            gValue = tone.getGreen() == 0.0 ? 0 : colorValue;
+            bValue = tone.getBlue() == 0.0 ? 0 : colorValue;
         }
+        return 0xff000000 | rValue << 16 | gValue << 8 | bValue;
     }
 }
@@ -5,11 +5,26 @@ import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static model.Model.*;
 
@@ -17,6 +32,13 @@ import static model.Model.*;
  * This class stores the methods for file operations.
  */
 public class FileOps {
+    private static int[] savedGraph; // the graph copied from the session to be saved, allocated once on first save
+
+    // the binary session format: a header with the parameters, then the graph deflated with 1, 2 or 4 bytes per value
+    public static final String sessionExtension = ".mbs";
+    private static final int magic = 0x4D425331; // "MBS1", tells binary sessions from text files
+    private static final int version = 1;
+    private static final ByteBuffer inflated = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN); // reused by every load, holds whole values of any size
 
     /**
      * This selects a file for save/ load operation.
@@ -26,7 +48,8 @@ public class FileOps {
     public static void selectFile(String title, boolean isSave) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
-        fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Text Files", "*.txt"));   // files are stored in text format
+        fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Mandelbrot Sessions", "*" + sessionExtension),
+                new FileChooser.ExtensionFilter("Text Files", "*.txt"));   // text files are still supported for older saves
         if (isSave) {
             file = fileChooser.showSaveDialog(new Stage());
         } else {
@@ -36,28 +59,116 @@ public class FileOps {
 
     /**
      * This creates a file and writes program's current parameters for save operation.
+     * Files named *.txt are written in the old text format, others in the binary session format.
+     * The bounds and max. iterations saved are those of the graph held by the session, which may lag behind the view.
      */
     public static void writeFile() {
+        if (renderService != null && renderService.isRunning()) { // the render holds the graph until the JavaFX thread shows its pass
+            alert("The graph is still being rendered");
+            return;
+        }
+        if (savedGraph == null) {
+            savedGraph = new int[drawSize * drawSize];
+        }
+        Viewport view = session.copyGraph(savedGraph);
+        if (view == null) {
+            alert("Nothing has been rendered yet");
+            return;
+        }
+        if (file.getName().endsWith(".txt")) {
+            writeTextFile(savedGraph, view);
+            return;
+        }
         try {
-            if (!file.getName().endsWith(".txt")) {
-                file = new File(file.getAbsolutePath() + ".txt");
+            if (!file.getName().endsWith(sessionExtension)) {
+                file = new File(file.getAbsolutePath() + sessionExtension);
+            }
+            int[] graph = savedGraph;
+            int bytesPerValue = ViewportCache.getBytesPerValue(view.getMaxIterations());
+            byte[] payload = new byte[graph.length * bytesPerValue];
+            for (int index = 0, offset = 0; index < graph.length; index++, offset += bytesPerValue) {
+                int value = graph[index];
+                for (int shift = 0; shift < bytesPerValue; shift++) { // little-endian
+                    payload[offset + shift] = (byte) (value >>> (8 * shift));
+                }
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED); // the graph has long runs, so even the fastest level compresses well
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] compressed = new byte[payload.length + 64]; // deflate adds a few bytes at most to incompressible data
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
             }
+            deflater.end();
+
+            file.createNewFile();
+            try (DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                writer.writeInt(magic);
+                writer.writeInt(version);
+                writer.writeInt(drawSize); // the draw size is for validation purpose
+                writer.writeInt(drawSize);
+                writeString(writer, view.getMinReal().toString());
+                writeString(writer, view.getMaxReal().toString());
+                writeString(writer, view.getMinImaginary().toString());
+                writeString(writer, view.getMaxImaginary().toString());
+                writer.writeInt(view.getMaxIterations());
+                writer.writeDouble(view.getRadiusSquared());
+                writeString(writer, currentColor.toString());
+                writer.writeDouble(currentMagnification);
+                writer.writeByte(bytesPerValue);
+                writer.writeInt(payload.length);
+                writer.writeInt(compressedLength);
+                writer.writeLong(checksum.getValue());
+                writer.write(compressed, 0, compressedLength);
+            }
+            file.setReadOnly(); // prevent careless manipulation
+        }
+
+        catch (IOException e) {
+            alert("Cannot write data to the file");
+        }
+    }
+
+    /**
+     * This writes a string with its length in bytes in front.
+     * @param writer The stream to write to.
+     * @param value The string to be written.
+     * @throws IOException If the string cannot be written.
+     */
+    private static void writeString(DataOutputStream writer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writer.writeInt(bytes.length);
+        writer.write(bytes);
+    }
+
+    /**
+     * This creates a file and writes program's current parameters in the old text format, one value per line.
+     * @param graph The graph to be written.
+     * @param view The view of the graph.
+     */
+    private static void writeTextFile(int[] graph, Viewport view) {
+        try {
             file.createNewFile();
             BufferedWriter writer = new BufferedWriter(new FileWriter(file));   // buffered writer can reduce IO calls
             writer.write(drawSize + "\n");  // the draw size is for validation purpose
             writer.write(drawSize + "\n");
-            writer.write(currentMinReal + "\n");
-            writer.write(currentMaxReal + "\n");
-            writer.write(currentMinImaginary + "\n");
-            writer.write(currentMaxImaginary + "\n");
-            writer.write(currentMaxIterations + "\n");
-            writer.write(currentRadiusSquared + "\n");
+            writer.write(view.getMinReal() + "\n");
+            writer.write(view.getMaxReal() + "\n");
+            writer.write(view.getMinImaginary() + "\n");
+            writer.write(view.getMaxImaginary() + "\n");
+            writer.write(view.getMaxIterations() + "\n");
+            writer.write(view.getRadiusSquared() + "\n");
             writer.write(currentColor + "\n");
             writer.write(currentMagnification + "\n");
-            for (int[] line : graph) {
-                for (int value : line) {
-                    writer.write(value + "\n"); // one value per line
-                }
+            for (int value : graph) {
+                writer.write(value + "\n"); // one value per line
             }
             writer.flush();
             file.setReadOnly(); // prevent careless manipulation
@@ -70,25 +181,136 @@ public class FileOps {
 
     /**
      * This reads the parameters from the designated file for load operation.
+     * Binary sessions are recognised by their header, anything else is read as a text file.
+     * The graph is read straight into the session; if the file turns out to be corrupted, the view is kept
+     * and the next render calculates the graph again.
      */
     public static void readFile() {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < 4) {
+                readTextFile();
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the inflater reads the file in place
+            if (buffer.getInt() != magic) {
+                readTextFile();
+                return;
+            }
+            if (buffer.getInt() > version) {
+                alert("The file was saved by a newer version");
+                return;
+            }
+            if (buffer.getInt() != drawSize || buffer.getInt() != drawSize) {  // validate the draw size
+                throw new UnsupportedOperationException();
+            }
+            BigDecimal tempMinReal = new BigDecimal(readString(buffer)); // temporary variables used to store data before validation
+            BigDecimal tempMaxReal = new BigDecimal(readString(buffer));
+            BigDecimal tempMinImaginary = new BigDecimal(readString(buffer));
+            BigDecimal tempMaxImaginary = new BigDecimal(readString(buffer));
+            int tempMaxIterations = buffer.getInt();
+            double tempRadiusSquared = buffer.getDouble();
+            Color tempColor = Color.valueOf(readString(buffer));
+            double tempMagnification = buffer.getDouble();
+            int bytesPerValue = buffer.get();
+            int payloadLength = buffer.getInt();
+            int compressedLength = buffer.getInt();
+            long expectedChecksum = buffer.getLong();
+            if (tempMaxIterations < 0 || bytesPerValue != ViewportCache.getBytesPerValue(tempMaxIterations)
+                    || payloadLength != drawSize * drawSize * bytesPerValue || compressedLength != buffer.remaining()) {
+                throw new Exception();
+            }
+            Viewport tempViewport = new Viewport(tempMinReal, tempMaxReal, tempMinImaginary, tempMaxImaginary, tempMaxIterations, tempRadiusSquared);
+
+            session.load(graph -> {
+                CRC32 checksum = new CRC32();
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(buffer); // reads straight from the mapped file
+                    int position = 0;
+                    while (position < graph.length) { // the payload is inflated chunk by chunk, and each chunk is decoded into the graph
+                        inflated.clear().limit(Math.min(inflated.capacity(), (graph.length - position) * bytesPerValue));
+                        while (inflated.hasRemaining()) { // a full chunk, so no value is split between two
+                            if (inflater.inflate(inflated) == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                                throw new DataFormatException("Truncated payload");
+                            }
+                        }
+                        inflated.flip();
+                        checksum.update(inflated.array(), 0, inflated.limit());
+                        while (inflated.hasRemaining()) {
+                            int value;
+                            if (bytesPerValue == 1) {
+                                value = inflated.get() & 0xff;
+                            } else if (bytesPerValue == 2) {
+                                value = inflated.getShort() & 0xffff;
+                            } else {
+                                value = inflated.getInt();
+                            }
+                            if (value > tempMaxIterations || value < 0) {  // validate data
+                                throw new Exception();
+                            }
+                            graph[position++] = value;
+                        }
+                    }
+                } finally {
+                    inflater.end();
+                }
+                if (checksum.getValue() != expectedChecksum) { // the graph is left incomplete by the session
+                    throw new DataFormatException("Checksum mismatch");
+                }
+                return tempViewport;
+            });
+
+            currentViewport = tempViewport; // write parameters from temporary storage to memory
+            currentColor = tempColor;
+            currentMagnification = tempMagnification;
+            undoStack.clear();
+            redoStack.clear();
+        }
+
+        catch (UnsupportedOperationException e) {   // type of exception is not important, used just to ensure others won't throw it
+            alert("Invalid draw sizes");
+        }
+
+        catch (Exception e) {   // for exceptions rather than different draw size
+            e.printStackTrace();
+            alert("Cannot read data from the file. File is corrupted/ invalid.");
+        }
+    }
+
+    /**
+     * This reads a string with its length in bytes in front.
+     * @param buffer The buffer to read from.
+     * @return The string.
+     * @throws DataFormatException If the length is invalid.
+     */
+    private static String readString(ByteBuffer buffer) throws DataFormatException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new DataFormatException("Invalid string length");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This reads the parameters from a file in the old text format, one value per line.
+     * The parameters come first, then the graph is read straight into the session.
+     */
+    private static void readTextFile() {
         String input;
         int index = 1;
-        try {
-            double tempMinReal = 0; // temporary variables used to store data before validation
-            double tempMaxReal = 0;
-            double tempMinImaginary = 0;
-            double tempMaxImaginary = 0;
+        try (Scanner reader = new Scanner(file)) {
+            BigDecimal tempMinReal = BigDecimal.ZERO; // temporary variables used to store data before validation
+            BigDecimal tempMaxReal = BigDecimal.ZERO;
+            BigDecimal tempMinImaginary = BigDecimal.ZERO;
+            BigDecimal tempMaxImaginary = BigDecimal.ZERO;
             int tempMaxIterations = 0;
             double tempRadiusSquared = 0;
             Color tempColor = ColorSet.blackWhite;
             double tempMagnification = 0;
-            int[][] tempGraph = new int[drawSize][drawSize];
-            int position;   // used to store the position of data at the graph
-
-            Scanner reader = new Scanner(file);
 
-            while (reader.hasNextLine()) {  // write data from file to temporary storage
+            while (index <= numberOfParameters && reader.hasNextLine()) {  // write parameters from file to temporary storage
                 input = reader.nextLine();
                 switch (index) {
                     case 1:
@@ -98,16 +320,16 @@ public class FileOps {
                         }
                         break;
                     case 3:
-                        tempMinReal = Double.parseDouble(input);
+                        tempMinReal = new BigDecimal(input); // also reads doubles saved by older versions
                         break;
                     case 4:
-                        tempMaxReal = Double.parseDouble(input);
+                        tempMaxReal = new BigDecimal(input);
                         break;
                     case 5:
-                        tempMinImaginary = Double.parseDouble(input);
+                        tempMinImaginary = new BigDecimal(input);
                         break;
                     case 6:
-                        tempMaxImaginary = Double.parseDouble(input);
+                        tempMaxImaginary = new BigDecimal(input);
                         break;
                     case 7:
                         tempMaxIterations = Integer.parseInt(input);
@@ -121,58 +343,36 @@ public class FileOps {
                     case 10:
                         tempMagnification = Double.parseDouble(input);
                         break;
-                    default:
-                        if (index < drawSize * drawSize + numberOfParameters) { // ignore extra inputs
-                            position = index - numberOfParameters;
-                            if (Integer.parseInt(input) > tempMaxIterations || Integer.parseInt(input) < 0) {  // validate data
-                                throw new Exception();
-                            }
-                            tempGraph[position / drawSize] [position % drawSize] = Integer.parseInt(input);
-                        }
-                        break;
                 }
                 index++;
             }
-
-            if (index != drawSize * drawSize + numberOfParameters + 1) {    // validate length of file (mainly if it is shorter than expected)
+            if (index <= numberOfParameters) {    // validate length of file
                 throw new Exception();
             }
+            Viewport tempViewport = new Viewport(tempMinReal, tempMaxReal, tempMinImaginary, tempMaxImaginary, tempMaxIterations, tempRadiusSquared);
 
-            for (index = 3; index <= drawSize * drawSize + numberOfParameters; index++) {   // write from temporary storage to memory
-                switch (index) {    // first two are ignored, no operations needed
-                    case 3:
-                        currentMinReal = tempMinReal;
-                        break;
-                    case 4:
-                        currentMaxReal = tempMaxReal;
-                        break;
-                    case 5:
-                        currentMinImaginary = tempMinImaginary;
-                        break;
-                    case 6:
-                        currentMaxImaginary = tempMaxImaginary;
-                        break;
-                    case 7:
-                        currentMaxIterations = tempMaxIterations;
-                        break;
-                    case 8:
-                        currentRadiusSquared = tempRadiusSquared;
-                        break;
-                    case 9:
-                        currentColor = tempColor;
-                        break;
-                    case 10:
-                        currentMagnification = tempMagnification;
-                        break;
-                    default:
-                        if (index < drawSize * drawSize + numberOfParameters) { // no checking is needed, previously done
-                            position = index - numberOfParameters;
-                            graph[position / drawSize] [position % drawSize] = tempGraph[position / drawSize] [position % drawSize];
+            session.load(graph -> {
+                int position = 0;   // used to store the position of data at the graph
+                while (reader.hasNextLine()) {  // write data from file to the graph
+                    String line = reader.nextLine();
+                    if (position < graph.length) { // ignore extra inputs
+                        int value = Integer.parseInt(line);
+                        if (value > tempViewport.getMaxIterations() || value < 0) {  // validate data
+                            throw new Exception();
                         }
-                        break;
+                        graph[position] = value;
+                    }
+                    position++;
                 }
-            }
-            colorScale = colorMaxValue / currentMaxIterations;  // refresh parameters
+                if (position != graph.length) {    // validate length of file (mainly if it is shorter than expected)
+                    throw new Exception();
+                }
+                return tempViewport;
+            });
+
+            currentViewport = tempViewport; // write parameters from temporary storage to memory
+            currentColor = tempColor;
+            currentMagnification = tempMagnification;
             undoStack.clear();
             redoStack.clear();
         }
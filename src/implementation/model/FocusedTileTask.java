@@ -0,0 +1,199 @@
+package model;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class renders a rectangular area of the graph as tiles ordered by their distance from the focus,
+ * so the area the user is looking at is finished first. Every worker of the pool takes the nearest tile
+ * not yet started until none is left. When the focus moves, the remaining tiles are ordered again.
+ * Unlike 'TileTask', the order is global rather than left to work stealing, at the cost of a shared queue,
+ * which is only touched once per tile.
+ */
+class FocusedTileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L; // tasks are never serialized, but ForkJoinTask is Serializable
+    static final int TILE_SIDE = 64; // in pixels, the area of 'TileTask.TILE_AREA'
+
+    private final TileTask.TileKernel kernel;
+    private final TileFocus focus;
+    private final int workers;
+    private final Tiles tiles; // the queue is guarded by 'this'
+    private final double scale;
+    private final double xResolution;
+    private final double yResolution;
+    private int version;
+
+    /**
+     * This creates a task covering the given bounds.
+     * @param kernel The kernel used to render each tile.
+     * @param focus The focus.
+     * @param workers The number of workers taking tiles, usually the parallelism of the pool.
+     * @param tiles The tiles to be filled, not used by any other task until this one is complete.
+     * @param xStart The first column of the area (inclusive), in the units of the kernel.
+     * @param yStart The first row of the area (inclusive).
+     * @param xEnd The last column of the area (exclusive).
+     * @param yEnd The last row of the area (exclusive).
+     * @param scale The number of pixels per unit of the kernel, e.g. the step of a coarse pass.
+     * @param xResolution The number of pixels on the x-axis of the graph, which the focus is relative to.
+     * @param yResolution The number of pixels on the y-axis of the graph.
+     */
+    FocusedTileTask(TileTask.TileKernel kernel, TileFocus focus, int workers, Tiles tiles, int xStart, int yStart, int xEnd, int yEnd,
+                    int scale, int xResolution, int yResolution) {
+        this.kernel = kernel;
+        this.focus = focus;
+        this.workers = workers;
+        this.tiles = tiles;
+        this.scale = scale;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        tiles.split(xStart, yStart, xEnd, yEnd, Math.max(1, TILE_SIDE / scale)); // tiles cover the same pixels in every pass
+    }
+
+    @Override
+    protected void compute() {
+        synchronized (this) {
+            order();
+        }
+        Taker[] takers = new Taker[Math.min(workers, tiles.count)];
+        for (int index = 0; index < takers.length; index++) {
+            takers[index] = new Taker(this);
+        }
+        invokeAll(takers);
+    }
+
+    /**
+     * This class is a single worker, rendering the nearest tile not yet started until none is left.
+     */
+    private static class Taker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FocusedTileTask task;
+
+        /**
+         * This creates a worker taking the tiles of the given task.
+         * @param task The task holding the tiles.
+         */
+        Taker(FocusedTileTask task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            int[] bounds = task.tiles.bounds; // only changed before the task starts
+            for (int tile = task.next(); tile >= 0; tile = task.next()) {
+                task.kernel.render(bounds[4 * tile], bounds[4 * tile + 1], bounds[4 * tile + 2], bounds[4 * tile + 3]);
+            }
+        }
+    }
+
+    /**
+     * This takes the nearest tile not yet started, ordering the remaining tiles again if the focus moved.
+     * @return The index of the tile, or -1 if all tiles are started.
+     */
+    private synchronized int next() {
+        if (version != focus.getVersion()) {
+            order();
+        }
+        return tiles.poll();
+    }
+
+    /**
+     * This orders the tiles not yet started by their distance from the focus.
+     */
+    private void order() {
+        version = focus.getVersion();
+        tiles.order(focus.getX() * xResolution, focus.getY() * yResolution, scale); // in pixels
+    }
+
+    /**
+     * This class holds the tiles of an area and a heap of the indexes of those not yet started, nearest the focus first.
+     * Its arrays only grow, so it can be reused for every render without allocating.
+     */
+    static class Tiles {
+        int[] bounds = new int[0];                  // xStart, yStart, xEnd, yEnd of each tile in the units of the kernel
+        private int[] heap = new int[0];            // the tiles not yet started
+        private double[] distances = new double[0]; // the square of the distance of each tile from the focus when last ordered
+        private int count = 0;                      // the number of tiles
+        private int size = 0;                       // the number of tiles not yet started
+
+        /**
+         * This splits an area into square tiles, replacing any previous ones, none of them started.
+         * @param xStart The first column of the area (inclusive).
+         * @param yStart The first row of the area (inclusive).
+         * @param xEnd The last column of the area (exclusive).
+         * @param yEnd The last row of the area (exclusive).
+         * @param side The side of the tiles.
+         */
+        void split(int xStart, int yStart, int xEnd, int yEnd, int side) {
+            int columns = xEnd > xStart ? (xEnd - xStart + side - 1) / side : 0;
+            int rows = yEnd > yStart ? (yEnd - yStart + side - 1) / side : 0;
+            count = columns * rows;
+            if (heap.length < count) {
+                bounds = new int[4 * count];
+                heap = new int[count];
+                distances = new double[count];
+            }
+            int tile = 0;
+            for (int y = yStart; y < yEnd; y += side) {
+                for (int x = xStart; x < xEnd; x += side) {
+                    bounds[4 * tile] = x;
+                    bounds[4 * tile + 1] = y;
+                    bounds[4 * tile + 2] = Math.min(x + side, xEnd);
+                    bounds[4 * tile + 3] = Math.min(y + side, yEnd);
+                    heap[tile] = tile;
+                    tile++;
+                }
+            }
+            size = count;
+        }
+
+        /**
+         * This orders the tiles not yet started by their distance from the focus.
+         * @param focusX The focus along the x-axis in pixels.
+         * @param focusY The focus along the y-axis in pixels.
+         * @param scale The number of pixels per unit of the tiles.
+         */
+        void order(double focusX, double focusY, double scale) {
+            for (int position = 0; position < size; position++) {
+                int tile = heap[position];
+                double dx = (bounds[4 * tile] + bounds[4 * tile + 2]) * scale / 2 - focusX;
+                double dy = (bounds[4 * tile + 1] + bounds[4 * tile + 3]) * scale / 2 - focusY;
+                distances[tile] = dx * dx + dy * dy;
+            }
+            for (int position = size / 2 - 1; position >= 0; position--) {
+                siftDown(position);
+            }
+        }
+
+        /**
+         * @return The index of the nearest tile not yet started, which is then started, or -1 if there is none.
+         */
+        int poll() {
+            if (size == 0) {
+                return -1;
+            }
+            int tile = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+            return tile;
+        }
+
+        /**
+         * This moves a tile of the heap down until no tile below it is nearer.
+         * @param position The position of the tile in the heap.
+         */
+        private void siftDown(int position) {
+            int tile = heap[position];
+            for (int child = 2 * position + 1; child < size; child = 2 * position + 1) {
+                if (child + 1 < size && distances[heap[child + 1]] < distances[heap[child]]) {
+                    child++;
+                }
+                if (distances[heap[child]] >= distances[tile]) {
+                    break;
+                }
+                heap[position] = heap[child];
+                position = child;
+            }
+            heap[position] = tile;
+        }
+    }
+}
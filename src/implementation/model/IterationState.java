@@ -0,0 +1,63 @@
+package model;
+
+/**
+ * This class stores the final value of Z and the iteration count of every pixel of a render,
+ * so the render can be continued to a higher max. iterations instead of starting again from Z = 0.
+ * The real part of Z also marks the status of a pixel: positive infinity if it escaped,
+ * NaN if it is proven never to escape, and the actual value otherwise.
+ */
+public class IterationState {
+    final double[] zr;
+    final double[] zi;
+    final int[] iterations;
+
+    // the view the state belongs to, only valid if 'isValid' is true
+    private boolean isValid = false;
+    PixelGrid grid;
+    double radiusSquared;
+
+    /**
+     * This creates an empty state for the given number of pixels.
+     * @param size The number of pixels, at least xResolution * yResolution of the renders using it.
+     */
+    public IterationState(int size) {
+        zr = new double[size];
+        zi = new double[size];
+        iterations = new int[size];
+    }
+
+    /**
+     * @return true if the state is complete for the view set by 'setView'.
+     */
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * This marks the state as belonging to no view, e.g. before a new view is rendered into it.
+     */
+    public void invalidate() {
+        isValid = false;
+    }
+
+    /**
+     * This marks the state as complete for the given view.
+     * @param grid The pixels of the view.
+     * @param radiusSquared The square of the escape radius.
+     */
+    public void setView(PixelGrid grid, double radiusSquared) {
+        this.grid = grid;
+        this.radiusSquared = radiusSquared;
+        isValid = true;
+    }
+
+    /**
+     * This checks if the state is complete for the given view, whatever max. iterations it was computed with.
+     * @param grid The pixels of the view.
+     * @param radiusSquared The square of the escape radius.
+     * @return true if the state can be continued for the view.
+     */
+    public boolean matches(PixelGrid grid, double radiusSquared) {
+        return isValid && this.grid.equals(grid) && this.radiusSquared == radiusSquared;
+    }
+}
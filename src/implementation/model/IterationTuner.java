@@ -0,0 +1,119 @@
+package model;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class chooses the max. iterations of a view, so shallow views are not iterated far longer than needed
+ * and deep views are not shown as blobs.
+ * The cap starts from an estimate growing with the zoom depth. A small probe render of the view is then
+ * continued to twice the cap; if a significant fraction of the boundary pixels which reached the cap escape
+ * with twice as many iterations, they were only cut off, and the cap is doubled and tested again.
+ * With double arithmetic the probe keeps its iteration state, so each doubling only continues the saturated pixels.
+ */
+public class IterationTuner {
+    public static final int probeSize = 128; // the width and height of the probe render
+    public static final int maxAutoIterations = 1 << 16;
+    private static final double significantFraction = 0.05; // of the saturated boundary pixels escaping after doubling the cap
+    private static final int minEscaping = 4; // fewer escaping pixels are noise, e.g. a single filament
+
+    /**
+     * This gets the estimate of the needed max. iterations from the zoom depth alone,
+     * the initial max. iterations at the initial view, growing with the number of digits zoomed in.
+     * @param view The view.
+     * @return The estimated max. iterations.
+     */
+    public static int getDepthEstimate(Viewport view) {
+        double digits = Math.max(0, Math.log10(view.getMagnification()) / 2); // the magnification is by area
+        double estimate = MandelbrotCalculator.INITIAL_MAX_ITERATIONS * Math.pow(1 + digits, 1.5);
+        return (int) Math.min(maxAutoIterations, Math.round(estimate));
+    }
+
+    /**
+     * This chooses the max. iterations of a view. It takes a few probe renders of 'probeSize' pixels.
+     * @param mandelCalc The calculator rendering the probes.
+     * @param view The view; its max. iterations are ignored.
+     * @param cancelled Checked during the probes; once it returns true the cap found so far is returned.
+     * @return The max. iterations, from the depth estimate to 'maxAutoIterations'.
+     */
+    public static int tune(MandelbrotCalculator mandelCalc, Viewport view, BooleanSupplier cancelled) {
+        int maxIterations = getDepthEstimate(view);
+        boolean isDouble = view.getPrecision(probeSize, probeSize) == MandelbrotCalculator.Precision.DOUBLE;
+        IterationState state = isDouble ? new IterationState(probeSize * probeSize) : null;
+        int[] probe = render(mandelCalc, view, maxIterations, state, null, cancelled);
+        int[] doubled = new int[probe.length];
+        while (maxIterations < maxAutoIterations && !cancelled.getAsBoolean()) {
+            int raised = Math.min(maxAutoIterations, 2 * maxIterations);
+            doubled = render(mandelCalc, view, raised, state, doubled, cancelled);
+            if (cancelled.getAsBoolean() || !isCutOff(probe, doubled, maxIterations, raised)) {
+                break;
+            }
+            maxIterations = raised;
+            int[] swap = probe; // the doubled probe is the base of the next test
+            probe = doubled;
+            doubled = swap;
+        }
+        return maxIterations;
+    }
+
+    /**
+     * This renders the probe, continuing from the state if it holds the probe with a lower cap.
+     * @param mandelCalc The calculator.
+     * @param view The view.
+     * @param maxIterations The max. iterations of the probe.
+     * @param state The iteration state of the probe, or null for arithmetic which keeps none.
+     * @param probe The buffer of the probe, or null for a new one.
+     * @param cancelled Checked before each tile.
+     * @return The probe.
+     */
+    private static int[] render(MandelbrotCalculator mandelCalc, Viewport view, int maxIterations, IterationState state, int[] probe,
+                                BooleanSupplier cancelled) {
+        if (probe == null) {
+            probe = new int[probeSize * probeSize];
+        }
+        if (state != null && state.isValid()) {
+            return mandelCalc.resumeMandelbrotSet(probe, state, maxIterations, cancelled);
+        }
+        PixelGrid grid = state != null ? PixelGrid.anchored(probeSize, probeSize, view) : null;
+        IntBinaryOperator pixel = state != null
+                ? mandelCalc.getPixelFunction(state, grid, maxIterations, view.getRadiusSquared())
+                : mandelCalc.getPixelFunction(probeSize, probeSize, view.withMaxIterations(maxIterations));
+        mandelCalc.calcMandelbrotRegion(probe, probeSize, probeSize, 0, 0, probeSize, probeSize, pixel, cancelled);
+        if (state != null && !cancelled.getAsBoolean()) {
+            state.setView(grid, view.getRadiusSquared());
+        }
+        return probe;
+    }
+
+    /**
+     * This checks if a significant fraction of the boundary pixels reaching the cap escape with a raised cap.
+     * A boundary pixel reached the cap and has a neighbour which escaped; pixels deep inside the set never escape
+     * and do not count. If no pixel escaped, the view is a blob and every pixel counts.
+     * @param probe The probe with the cap.
+     * @param doubled The same probe with the raised cap.
+     * @param maxIterations The cap.
+     * @param raised The raised cap.
+     * @return true if the cap cut off the orbits of the boundary.
+     */
+    static boolean isCutOff(int[] probe, int[] doubled, int maxIterations, int raised) {
+        boolean isBlob = true;
+        for (int value : probe) {
+            isBlob &= value == maxIterations;
+        }
+        int saturated = 0;
+        int escaping = 0;
+        for (int y = 0; y < probeSize; y++) {
+            for (int x = 0; x < probeSize; x++) {
+                int index = y * probeSize + x;
+                if (probe[index] == maxIterations && (isBlob || (x > 0 && probe[index - 1] < maxIterations)
+                        || (x + 1 < probeSize && probe[index + 1] < maxIterations)
+                        || (y > 0 && probe[index - probeSize] < maxIterations)
+                        || (y + 1 < probeSize && probe[index + probeSize] < maxIterations))) {
+                    saturated++;
+                    escaping += doubled[index] < raised ? 1 : 0;
+                }
+            }
+        }
+        return escaping >= minEscaping && escaping > significantFraction * saturated;
+    }
+}
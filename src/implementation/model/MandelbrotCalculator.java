@@ -1,5 +1,13 @@
 package model;
 
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntBinaryOperator;
+
 /*
 Copyright (c) 2021, Jon Lewis <jon.lewis@st-andrews.ac.uk>
 All rights reserved.
@@ -35,12 +43,25 @@ either expressed or implied, of the FreeBSD Project.
  * The calcMandelbrotSet method below iterates over X,Y positions and establishes for specified parameter values a 2-D array containing
  * for each [y][x] pixel an iteration value that may be mapped to colour and used to visualise the Mandelbrot set.
  * The calcMandelbrotSet method iteratively calls for each X,Y coordinate, the calcMandel method (also included here) which establishes the iteration value for a particular X,Y coordinate.
+ * The pixels are split into tiles which are rendered in parallel on a work-stealing fork/join pool. Every pixel is still computed by the same
+ * calcMandel call with the same C, so the result is identical to a serial walk over all pixels.
  *
  * Example usage -- To obtain a 800x800 2-D array of Mandelbrot set values for the initial parameter values
  *
  * MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
  * int[][] mandelbrotData = mandelCalc.calcMandelbrotSet(800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
  *
+ * To render repeatedly without allocating, pass a flat row-major int[800 * 800] buffer and a Viewport instead; the buffer is filled in place.
+ *
+ * The methods below share these parameters, which are only documented here:
+ * mandelbrotData - the flat row-major buffer to write to, with pixel [y][x] at mandelbrotData[y * xResolution + x],
+ *                  holding at least xResolution * yResolution values.
+ * xResolution, yResolution - the number of pixels on the x-axis and the y-axis in your GUI display.
+ * view - the bounds of C at arbitrary precision, the maximum number of iterations and the square of the escape radius.
+ * maxIterations, radiusSquared - the same as those of a view, for methods which take no view.
+ * pixel - the function giving the iteration value of pixel (x, y), e.g. from getPixelFunction.
+ * cancelled - checked before each tile; once it returns true the remaining tiles are skipped and the buffer is left incomplete.
+ *
  * @author jon.lewis@st-andrews.ac.uk
  *
  */
@@ -56,6 +77,189 @@ public class MandelbrotCalculator {
     // Default parameter values
     public static final double DEFAULT_RADIUS_SQUARED = 4.0;
 
+    /**
+     * The arithmetic used to iterate the pixels, from the cheapest to the most precise.
+     */
+    public enum Precision {
+        DOUBLE(1e-13), // below this spacing, neighbouring pixels share the same double coordinates at typical magnitudes
+        DOUBLE_DOUBLE(1e-28), // about 106 bits, far cheaper than arbitrary precision
+        PERTURBATION(0);
+
+        final double minPixelSpacing; // the smallest pixel spacing this precision is used for
+
+        Precision(double minPixelSpacing) {
+            this.minPixelSpacing = minPixelSpacing;
+        }
+    }
+
+    /**
+     * A kernel which iterates a run of adjacent pixels of one row together, e.g. with SIMD instructions.
+     * It must give the same values as calcMandel for the same C.
+     */
+    interface RowKernel {
+        /**
+         * Calculates the pixels xStart to xEnd (exclusive) of one row, with C = (realIndex + x) * realStep + realOffset + i * cImaginary
+         * as in 'PixelGrid.getReal'.
+         * @param mandelbrotData the buffer to write to, pixel x is stored at offset + x.
+         * @param offset the index of pixel 0 of the row.
+         * @param xStart the first column (inclusive).
+         * @param xEnd the last column (exclusive).
+         * @param realIndex the index of pixel 0 of the row on the grid of the real axis, a whole number.
+         * @param realStep the distance between neighbouring pixels on the real axis.
+         * @param realOffset the real component of C of the pixel with index 0 on the grid.
+         * @param cImaginary the imaginary component of C shared by the row.
+         * @param interiorCheck whether points inside the main cardioid and the period-2 bulb are given maxIterations without iterating.
+         */
+        void calcRow(int[] mandelbrotData, int offset, int xStart, int xEnd, double realIndex, double realStep, double realOffset, double cImaginary, int maxIterations, double radiusSquared, boolean interiorCheck);
+    }
+
+    /**
+     * A pixel function which can also calculate a run of adjacent pixels of one row together.
+     */
+    interface RowFunction extends IntBinaryOperator {
+        /**
+         * Calculates the pixels xStart to xEnd (exclusive) of row y.
+         * @param mandelbrotData the buffer to write to, pixel x is stored at offset + x.
+         * @param offset the index of pixel 0 of the row.
+         * @param xStart the first column (inclusive).
+         * @param xEnd the last column (exclusive).
+         * @param y the row.
+         */
+        void applyRow(int[] mandelbrotData, int offset, int xStart, int xEnd, int y);
+    }
+
+    // the SIMD kernel, only present if built with the 'vector' profile and run with --add-modules jdk.incubator.vector
+    private static final RowKernel rowKernel = loadRowKernel();
+    private static final int SUBDIVISION_CELL = 256; // the side of the cells ordered around the focus by calcMandelbrotSetSubdivided
+
+    private final ForkJoinPool pool;
+    private final ArrayDeque<FocusedTileTask.Tiles> spareTiles = new ArrayDeque<>(); // reused by focused renders, guarded by itself
+    private volatile boolean interiorCheck = true;
+    private volatile boolean periodicityCheck = true;
+    private volatile TileFocus focus = null; // null renders tiles in fork/join order
+
+    /**
+     * Creates a calculator which uses all available processors.
+     */
+    public MandelbrotCalculator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a calculator with a given level of parallelism.
+     * @param parallelism the number of worker threads used to render the tiles; 1 renders on a single worker.
+     */
+    public MandelbrotCalculator(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Method to load the SIMD kernel, which is compiled separately as it needs the Vector API.
+     * @return the kernel, or null if it is not built or the Vector API is not available, in which case the scalar loop is used.
+     */
+    private static RowKernel loadRowKernel() {
+        try {
+            return (RowKernel) Class.forName("model.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) { // NoClassDefFoundError if jdk.incubator.vector is not resolved
+            return null;
+        }
+    }
+
+    /**
+     * @return true if rows of pixels are iterated with the SIMD kernel.
+     */
+    public static boolean isVectorised() {
+        return rowKernel != null;
+    }
+
+    /**
+     * @return the number of worker threads used to render the tiles.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Switches the exact tests that skip points inside the main cardioid and the period-2 bulb.
+     * The setting is read once at the start of each render.
+     * @param interiorCheck true to return maxIterations for those points without iterating.
+     */
+    public void setInteriorCheck(boolean interiorCheck) {
+        this.interiorCheck = interiorCheck;
+    }
+
+    /**
+     * @return whether points inside the main cardioid and the period-2 bulb are skipped.
+     */
+    public boolean isInteriorCheck() {
+        return interiorCheck;
+    }
+
+    /**
+     * Switches the detection of periodic orbits, which stops iterating once Z repeats a previous value exactly.
+     * The setting is read once at the start of each render.
+     * @param periodicityCheck true to stop bounded orbits as soon as they are found to cycle.
+     */
+    public void setPeriodicityCheck(boolean periodicityCheck) {
+        this.periodicityCheck = periodicityCheck;
+    }
+
+    /**
+     * @return whether periodic orbits are detected and stopped early.
+     */
+    public boolean isPeriodicityCheck() {
+        return periodicityCheck;
+    }
+
+    /**
+     * Sets the focus the tiles of every render are ordered around, so the area the user
+     * is looking at is finished first. Without a focus, tiles are split and stolen by the fork/join pool in any order.
+     * The focus is read at the start of each render, its position before each tile.
+     * @param focus the focus, or null for none.
+     */
+    public void setFocus(TileFocus focus) {
+        this.focus = focus;
+    }
+
+    /**
+     * @return the focus tiles are ordered around, or null for none.
+     */
+    public TileFocus getFocus() {
+        return focus;
+    }
+
+    /**
+     * Method to render a rectangular area tile by tile on the pool, nearest the focus first if there is one.
+     * @param kernel the kernel rendering each tile.
+     * @param xStart the first column of the area (inclusive), in the units of the kernel.
+     * @param yStart the first row of the area (inclusive).
+     * @param xEnd the last column of the area (exclusive).
+     * @param yEnd the last row of the area (exclusive).
+     * @param scale the number of pixels per unit of the kernel.
+     * @param xResolution the number of pixels on the x-axis of the graph.
+     * @param yResolution the number of pixels on the y-axis of the graph.
+     */
+    private void invokeTiles(TileTask.TileKernel kernel, int xStart, int yStart, int xEnd, int yEnd, int scale, int xResolution, int yResolution){
+        TileFocus focus = this.focus;
+        if (focus == null) {
+            pool.invoke(new TileTask(kernel, xStart, yStart, xEnd, yEnd));
+        } else {
+            FocusedTileTask.Tiles tiles;
+            synchronized (spareTiles) {
+                tiles = spareTiles.isEmpty() ? new FocusedTileTask.Tiles() : spareTiles.pop(); // one for each render in progress
+            }
+            try {
+                pool.invoke(new FocusedTileTask(kernel, focus, pool.getParallelism(), tiles, xStart, yStart, xEnd, yEnd, scale, xResolution, yResolution));
+            } finally {
+                synchronized (spareTiles) {
+                    spareTiles.push(tiles);
+                }
+            }
+        }
+    }
 
 
     /**
@@ -63,13 +267,24 @@ public class MandelbrotCalculator {
      * If the square of the absolute value of Z is still inside the defined squaredRadius after maxIterations then we stop iterating and return maxIterations, implicitly assuming that Z will never escape the radius for the given setting of the constant C.
      * In this case, the value of C is treated as being part of the Mandelbrot set, i.e. the set of starting constants C for which the value of Z remains bounded within the complex plane under iteration.
      *
+     * Two optional shortcuts return maxIterations early without changing the result.
+     * The interior check skips points strictly inside the main cardioid or the period-2 bulb, where Z never escapes.
+     * The periodicity check remembers Z at exponentially growing intervals (Brent's method); if Z later equals the remembered value exactly,
+     * the orbit only repeats values that were already found to be inside the radius, so it can never escape.
+     * Only exact equality is used, so both shortcuts agree with the plain loop for every point they classify.
+     *
      * @param cReal the real component (akin to X component) of the constant C.
      * @param cImaginary the imaginary component (akin to Y component) of the constant C.
      * @param maxIterations the maximum number of iterations over which to iterate the equation until assuming Z will remain bounded.
      * @param radiusSquared the square of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded. The value used is commonly 4.0.
+     * @param interiorCheck whether to skip points inside the main cardioid and the period-2 bulb.
+     * @param periodicityCheck whether to stop iterating once the orbit is found to cycle.
      * @return the number iterations for the value of Z to grow outside the bounding radius, or maxIterations if it never escaped.
      */
-    private int calcMandel(double cReal, double cImaginary, int maxIterations, double radiusSquared){
+    int calcMandel(double cReal, double cImaginary, int maxIterations, double radiusSquared, boolean interiorCheck, boolean periodicityCheck){
+        if (interiorCheck && radiusSquared >= DEFAULT_RADIUS_SQUARED && isInterior(cReal, cImaginary)) {
+            return maxIterations; // orbits of interior points stay within |Z| <= 2, so a smaller radius could still see them escape
+        }
         // To work out Z_n+1 = Z_n^2 + C and establish whether C is in the Mandelbrot set or not
         // we need to
         //    square the current value of Z
@@ -82,6 +297,10 @@ public class MandelbrotCalculator {
         int iterations = 0;
         double zr = 0;
         double zi = 0;
+        double checkZr = 0; // the remembered value of Z, starting with Z_0
+        double checkZi = 0;
+        int checkInterval = 1;
+        int sinceCheck = 0;
         boolean outside = false;
         while (iterations < maxIterations && !outside) {
             double zr2 = zr * zr;
@@ -93,10 +312,109 @@ public class MandelbrotCalculator {
             if ((zr2 + zi2) > radiusSquared)
                 outside = true;
             iterations++;
+            if (periodicityCheck && !outside) {
+                if (zr == checkZr && zi == checkZi) {
+                    return maxIterations;
+                }
+                if (++sinceCheck == checkInterval) {
+                    sinceCheck = 0;
+                    checkInterval = checkInterval < (1 << 20) ? checkInterval << 1 : checkInterval; // bounded so long cycles are still caught
+                    checkZr = zr;
+                    checkZi = zi;
+                }
+            }
         }
         return iterations;
     }
 
+    /**
+     * Method which tests whether C lies strictly inside the main cardioid or the period-2 bulb of the Mandelbrot set.
+     * @param cReal the real component of the constant C.
+     * @param cImaginary the imaginary component of the constant C.
+     * @return true if C is inside either region.
+     */
+    static boolean isInterior(double cReal, double cImaginary) {
+        double ci2 = cImaginary * cImaginary;
+        double shifted = cReal - 0.25;
+        double q = shifted * shifted + ci2;
+        if (q * (q + shifted) < 0.25 * ci2) {
+            return true; // main cardioid
+        }
+        double bulbReal = cReal + 1;
+        return bulbReal * bulbReal + ci2 < 0.0625; // period-2 bulb with radius 1/4 around -1
+    }
+
+    /**
+     * Method which calculates the same number of iterations as calcMandel above, keeping the final value of Z in the given state
+     * so that a later call with a higher maxIterations can continue from it rather than from the origin.
+     * If resume is true, the pixel continues from the state: pixels which escaped or are proven never to escape are answered from the state
+     * straight away, and pixels which already reached maxIterations are clamped to it. This gives the same result as calcMandel
+     * because the iteration sequence of Z does not depend on where it was interrupted. The other parameters are those of calcMandel above.
+     *
+     * @param index the position of the pixel in the state.
+     * @param state the state holding Z and the iteration count of the pixel.
+     * @param resume whether to continue from the state rather than from the origin.
+     * @return the number iterations for the value of Z to grow outside the bounding radius, or maxIterations if it never escaped.
+     */
+    int calcMandel(int index, double cReal, double cImaginary, IterationState state, boolean resume, int maxIterations, double radiusSquared, boolean interiorCheck, boolean periodicityCheck){
+        int iterations;
+        double zr;
+        double zi;
+        if (resume) {
+            zr = state.zr[index];
+            iterations = state.iterations[index];
+            if (Double.isNaN(zr)) {
+                return maxIterations; // proven never to escape
+            }
+            if (zr == Double.POSITIVE_INFINITY || iterations >= maxIterations) {
+                return Math.min(iterations, maxIterations); // escaped, or already iterated far enough
+            }
+            zi = state.zi[index];
+        } else {
+            if (interiorCheck && radiusSquared >= DEFAULT_RADIUS_SQUARED && isInterior(cReal, cImaginary)) {
+                state.zr[index] = Double.NaN;
+                state.iterations[index] = maxIterations;
+                return maxIterations;
+            }
+            iterations = 0;
+            zr = 0;
+            zi = 0;
+        }
+        double checkZr = zr; // the remembered value of Z, which is tested for escape before it is compared
+        double checkZi = zi;
+        int checkInterval = 1;
+        int sinceCheck = 0;
+        boolean outside = false;
+        while (iterations < maxIterations && !outside) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            if ((zr2 + zi2) > radiusSquared)
+                outside = true;
+            iterations++;
+            if (periodicityCheck && !outside) {
+                if (zr == checkZr && zi == checkZi) {
+                    state.zr[index] = Double.NaN;
+                    state.iterations[index] = iterations;
+                    return maxIterations;
+                }
+                if (++sinceCheck == checkInterval) {
+                    sinceCheck = 0;
+                    checkInterval = checkInterval < (1 << 20) ? checkInterval << 1 : checkInterval;
+                    checkZr = zr;
+                    checkZi = zi;
+                }
+            }
+        }
+        state.iterations[index] = iterations;
+        state.zr[index] = outside ? Double.POSITIVE_INFINITY : zr;
+        state.zi[index] = zi;
+        return iterations;
+    }
+
 
 
     /**
@@ -111,18 +429,422 @@ public class MandelbrotCalculator {
      * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
      */
     public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
-        int[][] mandelbrotData = new int[yResolution][xResolution];
+        int[] flatData = new int[xResolution * yResolution];
+        calcMandelbrotRegion(flatData, xResolution, yResolution, 0, 0, xResolution, yResolution,
+                getPixelFunction(new PixelGrid(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary), maxIterations, radiusSquared), () -> false);
+        int[][] mandelbrotData = new int[yResolution][];
+        for (int y = 0; y < yResolution; y++) {
+            mandelbrotData[y] = Arrays.copyOfRange(flatData, y * xResolution, (y + 1) * xResolution);
+        }
+        return mandelbrotData;
+    }
 
-        double realStep = (maxReal - minReal)/xResolution;
-        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+    /**
+     * Method to calculate the Mandelbrot set for the given view into a caller-supplied buffer, which lets the caller reuse it for every render.
+     * The arithmetic is chosen from the pixel spacing as by getPixelFunction.
+     * @return the given buffer mandelbrotData.
+     */
+    public int[] calcMandelbrotSet(int[] mandelbrotData, int xResolution, int yResolution, Viewport view){
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, 0, 0, xResolution, yResolution, getPixelFunction(xResolution, yResolution, view), () -> false);
+        return mandelbrotData;
+    }
 
-        for (int y = 0; y < yResolution; y++) {
-            double cImaginary = minImaginary + y * imaginaryStep;
-            for (int x = 0; x < xResolution; x++) {
-                double cReal = minReal + x * realStep;
-                mandelbrotData[y][x] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
+    /**
+     * Method to select the arithmetic needed to tell neighbouring pixels apart.
+     * @param pixelSpacing the distance between neighbouring pixels in the complex plane.
+     * @return the cheapest precision which is accurate enough.
+     */
+    public static Precision getPrecision(double pixelSpacing) {
+        for (Precision precision : Precision.values()) { // from the cheapest
+            if (pixelSpacing >= precision.minPixelSpacing) {
+                return precision;
+            }
+        }
+        return Precision.PERTURBATION;
+    }
+
+    /**
+     * Method to get the function giving the iteration value of each pixel of the given grid in double arithmetic.
+     * The settings of the interior and periodicity checks are read once here.
+     * @param grid the pixels, e.g. anchored so a view moved by whole pixels gives the same values for the pixels it keeps.
+     * @return the function mapping (x, y) to the number of iterations of that pixel.
+     */
+    public IntBinaryOperator getPixelFunction(PixelGrid grid, int maxIterations, double radiusSquared){
+        boolean interiorCheck = this.interiorCheck; // read once so the whole render uses the same settings
+        boolean periodicityCheck = this.periodicityCheck;
+        if (rowKernel == null) {
+            return (x, y) -> calcMandel(grid.getReal(x), grid.getImaginary(y), maxIterations, radiusSquared, interiorCheck, periodicityCheck);
+        }
+        boolean rowInteriorCheck = interiorCheck && radiusSquared >= DEFAULT_RADIUS_SQUARED;
+        return new RowFunction() {
+            @Override
+            public int applyAsInt(int x, int y) {
+                return calcMandel(grid.getReal(x), grid.getImaginary(y), maxIterations, radiusSquared, interiorCheck, periodicityCheck);
+            }
+
+            @Override
+            public void applyRow(int[] mandelbrotData, int offset, int xStart, int xEnd, int y) {
+                // no periodicity check needed: an exactly repeating orbit never escapes, so it only saves time
+                rowKernel.calcRow(mandelbrotData, offset, xStart, xEnd, grid.realIndex, grid.realStep, grid.realOffset, grid.getImaginary(y),
+                        maxIterations, radiusSquared, rowInteriorCheck);
+            }
+        };
+    }
+
+    /**
+     * Method to get the pixel function of the given grid, which also records the final value of Z of every pixel in the given state.
+     * @param state the state to record Z in, holding at least as many pixels as the grid.
+     * @param grid the pixels.
+     * @return the function mapping (x, y) to the number of iterations of that pixel.
+     */
+    public IntBinaryOperator getPixelFunction(IterationState state, PixelGrid grid, int maxIterations, double radiusSquared){
+        int xResolution = grid.xResolution;
+        boolean interiorCheck = this.interiorCheck;
+        boolean periodicityCheck = this.periodicityCheck;
+        return (x, y) -> calcMandel(y * xResolution + x, grid.getReal(x), grid.getImaginary(y),
+                state, false, maxIterations, radiusSquared, interiorCheck, periodicityCheck);
+    }
+
+    /**
+     * Method to get the pixel function of a view, choosing the arithmetic from the pixel spacing.
+     * Shallow views use the anchored grid of their pixels (see PixelGrid), and so do views needing double-double arithmetic, so a view
+     * moved by whole pixels with Viewport.pan gives exactly the same values for the pixels it keeps. For the deepest views a reference orbit
+     * is calculated here at the needed precision, which may take a while for a high maxIterations.
+     * @return the function mapping (x, y) to the number of iterations of that pixel.
+     */
+    public IntBinaryOperator getPixelFunction(int xResolution, int yResolution, Viewport view){
+        switch (view.getPrecision(xResolution, yResolution)) {
+            case DOUBLE_DOUBLE:
+                return new DoubleDoubleKernel(xResolution, yResolution, view, interiorCheck);
+            case PERTURBATION:
+                return new PerturbationKernel(xResolution, yResolution, view);
+            default:
+                return getPixelFunction(PixelGrid.anchored(xResolution, yResolution, view), view.getMaxIterations(), view.getRadiusSquared());
+        }
+    }
+
+    /**
+     * Method to get the pixel function for a view given by its centre and pixel spacing, with C = centre + (x - xResolution / 2) * step.
+     * Unlike bounds, this keeps pixels aligned across zoom levels: pixel (2x, 2y) at half the step has exactly the same C in doubles
+     * as the pixel (x + xResolution / 4, y + yResolution / 4) at the full step, so its value can be reused.
+     * Deeper views use the same arithmetic as for the equivalent bounds.
+     * @param centreReal the real component of C at pixel (xResolution / 2, yResolution / 2).
+     * @param centreImaginary the imaginary component of C at that pixel.
+     * @param step the distance between neighbouring pixels on both axes.
+     * @return the function mapping (x, y) to the number of iterations of that pixel.
+     */
+    public IntBinaryOperator getCentredPixelFunction(int xResolution, int yResolution, BigDecimal centreReal, BigDecimal centreImaginary, BigDecimal step, int maxIterations, double radiusSquared){
+        int xCentre = xResolution / 2;
+        int yCentre = yResolution / 2;
+        if (getPrecision(step.doubleValue()) == Precision.DOUBLE) {
+            double cReal = centreReal.doubleValue();
+            double cImaginary = centreImaginary.doubleValue();
+            double pixelStep = step.doubleValue();
+            boolean interiorCheck = this.interiorCheck;
+            boolean periodicityCheck = this.periodicityCheck;
+            return (x, y) -> calcMandel(cReal + (x - xCentre) * pixelStep, cImaginary + (y - yCentre) * pixelStep,
+                    maxIterations, radiusSquared, interiorCheck, periodicityCheck);
+        }
+        BigDecimal minReal = centreReal.subtract(step.multiply(BigDecimal.valueOf(xCentre))); // exact, so the reference orbit is at the centre
+        BigDecimal minImaginary = centreImaginary.subtract(step.multiply(BigDecimal.valueOf(yCentre)));
+        return getPixelFunction(xResolution, yResolution, new Viewport(minReal, minReal.add(step.multiply(BigDecimal.valueOf(xResolution))),
+                minImaginary, minImaginary.add(step.multiply(BigDecimal.valueOf(yResolution))), maxIterations, radiusSquared));
+    }
+
+    /**
+     * Method to calculate a rectangular region of the Mandelbrot set for the given view into a caller-supplied buffer.
+     * Pixels outside the region are left untouched; the pixels inside get the same values as from calcMandelbrotSet.
+     * @param xStart the first column of the region (inclusive).
+     * @param yStart the first row of the region (inclusive).
+     * @param xEnd the last column of the region (exclusive).
+     * @param yEnd the last row of the region (exclusive).
+     */
+    public void calcMandelbrotRegion(int[] mandelbrotData, int xResolution, int yResolution, int xStart, int yStart, int xEnd, int yEnd, Viewport view, BooleanSupplier cancelled){
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, xStart, yStart, xEnd, yEnd, getPixelFunction(xResolution, yResolution, view), cancelled);
+    }
+
+    /**
+     * Method to calculate a rectangular region of the Mandelbrot set with the given pixel function into a caller-supplied buffer.
+     * The region is split into tiles which are rendered in parallel.
+     * @param xStart the first column of the region (inclusive).
+     * @param yStart the first row of the region (inclusive).
+     * @param xEnd the last column of the region (exclusive).
+     * @param yEnd the last row of the region (exclusive).
+     */
+    public void calcMandelbrotRegion(int[] mandelbrotData, int xResolution, int yResolution, int xStart, int yStart, int xEnd, int yEnd, IntBinaryOperator pixel, BooleanSupplier cancelled){
+        if (mandelbrotData.length < xResolution * yResolution) {
+            throw new IllegalArgumentException("Buffer holds " + mandelbrotData.length + " values, " + xResolution * yResolution + " needed");
+        }
+
+        RowFunction rows = pixel instanceof RowFunction ? (RowFunction) pixel : null;
+        invokeTiles((tileXStart, tileYStart, tileXEnd, tileYEnd) -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            for (int y = tileYStart; y < tileYEnd; y++) {
+                int row = y * xResolution;
+                if (rows != null) {
+                    rows.applyRow(mandelbrotData, row, tileXStart, tileXEnd, y);
+                    continue;
+                }
+                for (int x = tileXStart; x < tileXEnd; x++) {
+                    mandelbrotData[row + x] = pixel.applyAsInt(x, y);
+                }
+            }
+        }, xStart, yStart, xEnd, yEnd, 1, xResolution, yResolution);
+    }
+
+    /**
+     * Method to calculate a band of whole rows of a Mandelbrot set which is too large to be held in memory at once.
+     * Row y of the set is stored at row y - yStart of the band, so the band only needs to hold its own rows.
+     * With a focus, the tiles are ordered around the focus within the band.
+     * @param band the flat row-major buffer to write to, holding at least xResolution * (yEnd - yStart) values.
+     * @param xResolution the number of pixels on the x-axis of the whole set.
+     * @param yStart the first row of the band (inclusive).
+     * @param yEnd the last row of the band (exclusive).
+     * @param pixel the function giving the iteration value of pixel (x, y) of the whole set.
+     */
+    public void calcMandelbrotBand(int[] band, int xResolution, int yStart, int yEnd, IntBinaryOperator pixel, BooleanSupplier cancelled){
+        if (band.length < xResolution * (yEnd - yStart)) {
+            throw new IllegalArgumentException("Buffer holds " + band.length + " values, " + xResolution * (yEnd - yStart) + " needed");
+        }
+
+        RowFunction rows = pixel instanceof RowFunction ? (RowFunction) pixel : null;
+        invokeTiles((tileXStart, tileYStart, tileXEnd, tileYEnd) -> { // the rows of the tiles are relative to the band
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            for (int y = tileYStart; y < tileYEnd; y++) {
+                int row = y * xResolution;
+                if (rows != null) {
+                    rows.applyRow(band, row, tileXStart, tileXEnd, yStart + y);
+                    continue;
+                }
+                for (int x = tileXStart; x < tileXEnd; x++) {
+                    band[row + x] = pixel.applyAsInt(x, yStart + y);
+                }
+            }
+        }, 0, 0, xResolution, yEnd - yStart, 1, xResolution, yEnd - yStart);
+    }
+
+    /**
+     * Method to calculate the samples of selected pixels on a finer grid, e.g. for anti-aliasing.
+     * Sample (sx, sy) of pixel (x, y) is pixel (x * samplesPerAxis + sx, y * samplesPerAxis + sy) of the finer grid.
+     * @param samples the buffer to write to, receiving samplesPerAxis^2 values for each pixel, in row-major order within the pixel.
+     * @param pixels the row-major indexes of the pixels to be sampled.
+     * @param count the number of pixels to be sampled.
+     * @param samplesPerAxis the number of samples along each axis of a pixel.
+     * @param finePixel the function giving the iteration value of each pixel of the finer grid.
+     */
+    public void calcMandelbrotSamples(int[] samples, int[] pixels, int count, int xResolution, int samplesPerAxis, IntBinaryOperator finePixel, BooleanSupplier cancelled){
+        int samplesPerPixel = samplesPerAxis * samplesPerAxis;
+        if (samples.length < count * samplesPerPixel) {
+            throw new IllegalArgumentException("Buffer holds " + samples.length + " values, " + count * samplesPerPixel + " needed");
+        }
+
+        // the pixels are laid out as a single column of tiles; they run row by row, so the focus picks roughly the nearest rows
+        invokeTiles((ignored, start, ignoredEnd, end) -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            for (int position = start; position < end; position++) {
+                int x = pixels[position] % xResolution * samplesPerAxis;
+                int y = pixels[position] / xResolution * samplesPerAxis;
+                int sample = position * samplesPerPixel;
+                for (int sy = 0; sy < samplesPerAxis; sy++) {
+                    for (int sx = 0; sx < samplesPerAxis; sx++) {
+                        samples[sample++] = finePixel.applyAsInt(x + sx, y + sy);
+                    }
+                }
             }
+        }, 0, 0, 1, count, 1, 1, count);
+    }
+
+    /**
+     * Method to update a calculated Mandelbrot set after the view was moved by a whole number of pixels.
+     * The values still in view are moved within the buffer, and only the strips uncovered along the edges are calculated,
+     * so the cost is proportional to the uncovered area. New pixel [y][x] shows the point of old pixel [y + yShift][x + xShift].
+     * With the view from Viewport.pan, whose pixels lie on the same anchored grid, the result is exactly the same as calculating
+     * the new view from scratch.
+     * @param mandelbrotData the buffer holding the old view, updated in place to the new one.
+     * @param xShift the number of pixels the view moved along the x-axis.
+     * @param yShift the number of pixels the view moved along the y-axis.
+     * @param view the new view, with the same max. iterations as the old one.
+     * @return the number of pixels which were calculated.
+     */
+    public long panMandelbrotSet(int[] mandelbrotData, int xResolution, int yResolution, int xShift, int yShift, Viewport view, BooleanSupplier cancelled){
+        return panMandelbrotSet(mandelbrotData, xResolution, yResolution, xShift, yShift, getPixelFunction(xResolution, yResolution, view), cancelled);
+    }
+
+    /**
+     * Method to update a calculated Mandelbrot set after the view was moved by a whole number of pixels, as above,
+     * calculating the uncovered strips with the given pixel function of the new view.
+     * @param mandelbrotData the buffer holding the old view, updated in place to the new one.
+     * @param xShift the number of pixels the view moved along the x-axis.
+     * @param yShift the number of pixels the view moved along the y-axis.
+     * @return the number of pixels which were calculated.
+     */
+    public long panMandelbrotSet(int[] mandelbrotData, int xResolution, int yResolution, int xShift, int yShift, IntBinaryOperator pixel, BooleanSupplier cancelled){
+        if (Math.abs(xShift) >= xResolution || Math.abs(yShift) >= yResolution) { // nothing to keep
+            calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, 0, 0, xResolution, yResolution, pixel, cancelled);
+            return (long) xResolution * yResolution;
         }
+
+        int keptWidth = xResolution - Math.abs(xShift);
+        int keptStart = Math.max(0, -xShift); // the first column which is kept
+        int keptRowStart = Math.max(0, -yShift);
+        int keptRowEnd = Math.min(yResolution, yResolution - yShift);
+        if (yShift > 0) { // rows are moved up, so copy from the top to avoid overwriting rows not yet moved
+            for (int y = keptRowStart; y < keptRowEnd; y++) {
+                System.arraycopy(mandelbrotData, (y + yShift) * xResolution + keptStart + xShift, mandelbrotData, y * xResolution + keptStart, keptWidth);
+            }
+        } else {
+            for (int y = keptRowEnd - 1; y >= keptRowStart; y--) {
+                System.arraycopy(mandelbrotData, (y + yShift) * xResolution + keptStart + xShift, mandelbrotData, y * xResolution + keptStart, keptWidth);
+            }
+        }
+
+        // the uncovered rows span the whole width, the uncovered columns only the kept rows
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, 0, 0, xResolution, keptRowStart, pixel, cancelled);
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, 0, keptRowEnd, xResolution, yResolution, pixel, cancelled);
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, 0, keptRowStart, keptStart, keptRowEnd, pixel, cancelled);
+        calcMandelbrotRegion(mandelbrotData, xResolution, yResolution, keptStart + keptWidth, keptRowStart, xResolution, keptRowEnd, pixel, cancelled);
+        return (long) xResolution * yResolution - (long) keptWidth * (keptRowEnd - keptRowStart);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for the given view using Mariani-Silver subdivision.
+     * Only the borders of rectangles are iterated; a rectangle whose border has a single value is filled with it,
+     * otherwise it is cut into four and each quarter is handled the same way in parallel.
+     * This is much faster for views with large solid regions, but unlike calcMandelbrotSet it can miss thin details
+     * which do not touch any computed border.
+     * @return the number of pixels which were actually iterated, at most xResolution * yResolution.
+     */
+    public long calcMandelbrotSetSubdivided(int[] mandelbrotData, int xResolution, int yResolution, Viewport view){
+        if (mandelbrotData.length < xResolution * yResolution) {
+            throw new IllegalArgumentException("Buffer holds " + mandelbrotData.length + " values, " + xResolution * yResolution + " needed");
+        }
+        if (xResolution < 1 || yResolution < 1) {
+            return 0;
+        }
+
+        IntBinaryOperator pixel = getPixelFunction(xResolution, yResolution, view);
+
+        // the tiles are cells of SUBDIVISION_CELL pixels, each subdivided on its own; without a focus a single tile covers the graph
+        LongAdder count = new LongAdder();
+        int xCells = (xResolution + SUBDIVISION_CELL - 1) / SUBDIVISION_CELL;
+        int yCells = (yResolution + SUBDIVISION_CELL - 1) / SUBDIVISION_CELL;
+        invokeTiles((xStart, yStart, xEnd, yEnd) -> {
+            int left = xStart * SUBDIVISION_CELL;
+            int top = yStart * SUBDIVISION_CELL;
+            int right = Math.min(xEnd * SUBDIVISION_CELL, xResolution) - 1;
+            int bottom = Math.min(yEnd * SUBDIVISION_CELL, yResolution) - 1;
+            count.add(SubdivisionTask.computeBorder(pixel, mandelbrotData, xResolution, left, top, right, bottom));
+            count.add(new SubdivisionTask(pixel, mandelbrotData, xResolution, left, top, right, bottom).invoke());
+        }, 0, 0, xCells, yCells, SUBDIVISION_CELL, xResolution, yResolution);
+        return count.sum();
+    }
+
+    /**
+     * Method to calculate one pass of a progressive, coarse-to-fine rendering of the Mandelbrot set.
+     * Only pixels on a grid with the given step are iterated, and each one is copied to the step x step block below and to the right of it,
+     * so the buffer holds a blocky preview of the whole graph after every pass. Pixels already iterated by a previous pass with a coarser
+     * step are reused rather than computed again. A final pass with step 1 gives the same result as calcMandelbrotSet.
+     * @param step the distance between iterated pixels in this pass.
+     * @param previousStep the step of the previous pass over the same buffer and view, a multiple of step, or 0 if there was none.
+     */
+    public void calcMandelbrotPass(int[] mandelbrotData, int xResolution, int yResolution, int step, int previousStep, Viewport view, BooleanSupplier cancelled){
+        calcMandelbrotPass(mandelbrotData, xResolution, yResolution, step, previousStep, getPixelFunction(xResolution, yResolution, view), cancelled);
+    }
+
+    /**
+     * Method to calculate one pass of a progressive rendering as above, keeping the final value of Z of every iterated pixel in the given state.
+     * Once all passes down to step 1 are done, the state holds every pixel and can be continued with resumeMandelbrotSet.
+     * The state only holds orbits in doubles, so the pixels are iterated in double arithmetic whatever the depth of the view.
+     * @param state the state to record Z in, holding at least xResolution * yResolution pixels.
+     * @param step the distance between iterated pixels in this pass.
+     * @param previousStep the step of the previous pass over the same buffer and view, a multiple of step, or 0 if there was none.
+     */
+    public void calcMandelbrotPass(int[] mandelbrotData, IterationState state, int xResolution, int yResolution, int step, int previousStep, Viewport view, BooleanSupplier cancelled){
+        IntBinaryOperator pixel = getPixelFunction(state, PixelGrid.anchored(xResolution, yResolution, view), view.getMaxIterations(), view.getRadiusSquared());
+        calcMandelbrotPass(mandelbrotData, xResolution, yResolution, step, previousStep, pixel, cancelled);
+    }
+
+    /**
+     * Method to calculate one pass of a progressive rendering as above with the given pixel function.
+     * @param step the distance between iterated pixels in this pass.
+     * @param previousStep the step of the previous pass over the same buffer and pixel function, a multiple of step, or 0 if there was none.
+     */
+    public void calcMandelbrotPass(int[] mandelbrotData, int xResolution, int yResolution, int step, int previousStep, IntBinaryOperator pixel, BooleanSupplier cancelled){
+        if (mandelbrotData.length < xResolution * yResolution) {
+            throw new IllegalArgumentException("Buffer holds " + mandelbrotData.length + " values, " + xResolution * yResolution + " needed");
+        }
+        if (step < 1 || (previousStep != 0 && previousStep % step != 0)) {
+            throw new IllegalArgumentException("Step " + step + " does not refine previous step " + previousStep);
+        }
+
+        int xCells = (xResolution + step - 1) / step; // the tiles are laid over the grid of iterated pixels
+        int yCells = (yResolution + step - 1) / step;
+        RowFunction rows = step == 1 && pixel instanceof RowFunction ? (RowFunction) pixel : null; // only full-resolution rows are adjacent
+
+        invokeTiles((xStart, yStart, xEnd, yEnd) -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            for (int yCell = yStart; yCell < yEnd; yCell++) {
+                int y = yCell * step;
+                boolean previousRow = previousStep != 0 && y % previousStep == 0;
+                if (rows != null && !previousRow) {
+                    rows.applyRow(mandelbrotData, y * xResolution, xStart, xEnd, y);
+                    continue;
+                }
+                for (int xCell = xStart; xCell < xEnd; xCell++) {
+                    int x = xCell * step;
+                    int value;
+                    if (previousRow && x % previousStep == 0) {
+                        value = mandelbrotData[y * xResolution + x]; // already iterated by a coarser pass
+                    } else {
+                        value = pixel.applyAsInt(x, y);
+                    }
+                    for (int blockY = y; blockY < Math.min(y + step, yResolution); blockY++) {
+                        int row = blockY * xResolution;
+                        Arrays.fill(mandelbrotData, row + x, row + Math.min(x + step, xResolution), value);
+                    }
+                }
+            }
+        }, 0, 0, xCells, yCells, step, xResolution, yResolution);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for a new maxIterations from a state kept by an earlier render of the same view.
+     * Only pixels which reached the earlier maxIterations without being proven bounded are iterated further; all other pixels,
+     * and all pixels when maxIterations is lowered, are taken from the state. The result is the same as calcMandelbrotSet.
+     * @param mandelbrotData the buffer to write to, holding at least as many values as the state.
+     * @param state a valid state, which is updated as pixels are iterated further. It stays valid if the render is cancelled.
+     * @return the given buffer mandelbrotData.
+     */
+    public int[] resumeMandelbrotSet(int[] mandelbrotData, IterationState state, int maxIterations, BooleanSupplier cancelled){
+        if (!state.isValid()) {
+            throw new IllegalStateException("The state does not hold a complete render");
+        }
+        PixelGrid grid = state.grid;
+        int xResolution = grid.xResolution;
+        double radiusSquared = state.radiusSquared;
+        boolean periodicityCheck = this.periodicityCheck;
+
+        invokeTiles((xStart, yStart, xEnd, yEnd) -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            for (int y = yStart; y < yEnd; y++) {
+                double cImaginary = grid.getImaginary(y);
+                int row = y * xResolution;
+                for (int x = xStart; x < xEnd; x++) {
+                    double cReal = grid.getReal(x);
+                    mandelbrotData[row + x] = calcMandel(row + x, cReal, cImaginary, state, true, maxIterations, radiusSquared, false, periodicityCheck);
+                }
+            }
+        }, 0, 0, xResolution, grid.yResolution, 1, xResolution, grid.yResolution);
         return mandelbrotData;
     }
 }
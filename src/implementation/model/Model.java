@@ -4,15 +4,18 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 
 import java.io.File;
+import java.math.BigDecimal;
 import java.util.Stack;
 
-import static model.ColorSet.getColor;
+import static model.ColorSet.getPalette;
 import static model.ColorSet.greyScale;
 
 /**
@@ -25,7 +28,6 @@ public class Model {
     // Delegate.canvas is a square
     public static final int drawSize = 1000;
     public static final double colorMaxValue = 255; // used by ColorSet.java
-    public static double colorScale;
     public static Color currentColor;
 
     // used by pan & zoom operations
@@ -35,6 +37,12 @@ public class Model {
     public static double deltaX;
     public static double deltaY;
 
+    // used by the drag preview
+    public static final int previewSize = 250; // the side of the inset previewing a zoom
+    public static final int previewMargin = 10;
+    private static WritableImage preview; // the colored graph when the drag started, created on first use as it needs the toolkit
+    private static int overlayLines = 0; // the lines of the overlay drawn by 'setShowZoom'
+
     // used by show zoom magnification operations
     public static double currentMagnification;
 
@@ -45,29 +53,33 @@ public class Model {
     public static Boolean isRedo = false;
     public static Boolean isOverride = false;
 
-    // the parameters for the mandelbrot set
-    public static double currentMinReal;
-    public static double currentMaxReal;
-    public static double currentMinImaginary;
-    public static double currentMaxImaginary;
-    public static int currentMaxIterations;
-    public static double currentRadiusSquared;
+    // the parameters for the mandelbrot set, replaced as a whole by every change so renders can keep a consistent copy
+    public static Viewport currentViewport;
 
     public static final MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
-    public static int[][] graph = new int[drawSize][drawSize];
+    public static RenderService renderService; // renders in the background once the canvas is available
+    public static final TileFocus tileFocus = new TileFocus(); // the tiles around the cursor are rendered first
+    public static final ViewportCache viewportCache = new ViewportCache(64L * 1024 * 1024); // graphs of recent views for undo/ redo
+    private static final int[] frame = new int[drawSize * drawSize]; // the colored graph of the last pass shown, reused by every pass
+
+    // used by anti-aliasing
+    public static int samplesPerAxis = 1; // supersampling of pixels on edges, 1 is off
+    public static final int supersamplingThreshold = 1; // neighbours differing by more iterations are supersampled
+    private static double supersampledFraction = 0; // of the pixels in the frame
+
+    // used by render metrics
+    public static final RenderMetrics renderMetrics = new RenderMetrics(); // published through JMX by the delegate
+
+    // the graph, its samples and the view it holds, rendered by the render service and saved/ loaded by 'FileOps'
+    public static final RenderSession session = new RenderSession(drawSize, drawSize, mandelCalc, viewportCache, renderMetrics, supersamplingThreshold);
+    public static boolean isShowMetrics = false; // the metrics of the last render are shown in the overlay
+    public static boolean isAutoIterations = false; // max. iterations are chosen for each view by 'IterationTuner'
 
     /**
      * This sets the parameters to default settings.
      */
     public static void setParameters() {
-        currentMinReal = MandelbrotCalculator.INITIAL_MIN_REAL;
-        currentMaxReal = MandelbrotCalculator.INITIAL_MAX_REAL;
-        currentMinImaginary = MandelbrotCalculator.INITIAL_MIN_IMAGINARY;
-        currentMaxImaginary = MandelbrotCalculator.INITIAL_MAX_IMAGINARY;
-        currentMaxIterations = MandelbrotCalculator.INITIAL_MAX_ITERATIONS;
-        currentRadiusSquared = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
-
-        colorScale = colorMaxValue / currentMaxIterations;
+        currentViewport = Viewport.initial();
         currentColor = greyScale;
 
         currentMagnification = 1;
@@ -75,36 +87,47 @@ public class Model {
 
     /**
      * Another version of the draw method.
-     * Used to draw the graph.
+     * Used to draw the colored graph.
      * @param canvas The canvas to be drawn.
      */
     public static void draw(Canvas canvas) {
-        draw(currentColor, drawSize, canvas);
+        draw(drawSize, canvas);
     }
 
     /**
-     * This draws the content of the graph to the canvas.
+     * This draws the colored graph to the canvas.
      * This version is used to clear the show magnification area
      * if it is disabled.
-     * @param tone The original color used as reference.
      * @param yEnd The index of last horizontal line to be drawn.
      * @param canvas The canvas to be drawn.
      */
-    public static void draw(Color tone, int yEnd, Canvas canvas) {
+    public static void draw(int yEnd, Canvas canvas) {
         PixelWriter writer = canvas.getGraphicsContext2D().getPixelWriter();
-        for (int yIndex = 0; yIndex < yEnd; yIndex++) {
-            for (int xIndex = 0; xIndex < drawSize; xIndex++) {
-                int colorValue = (int) Math.round(graph[yIndex][xIndex] * colorScale);  // casting will have no effect to the data
-                getColor(tone, colorValue);
-                writer.setColor(xIndex, yIndex, currentColor);
-            }
+        writer.setPixels(0, 0, drawSize, yEnd, PixelFormat.getIntArgbInstance(), frame, 0, drawSize); // one bulk write instead of one per pixel
+    }
+
+    /**
+     * This colors a pass of the session into the frame with the current color.
+     * It is called while the session waits, so the graph and samples are only read here.
+     * @param graph The graph of the session.
+     * @param samples The samples of the session.
+     * @param maxIterations The max. iterations of the graph.
+     */
+    public static void colorize(int[] graph, Supersampler samples, int maxIterations) {
+        long start = System.nanoTime();
+        int[] palette = getPalette(currentColor, maxIterations);
+        for (int index = 0; index < frame.length; index++) {
+            frame[index] = palette[graph[index]];
         }
-        currentColor = tone;    // this sets 'currentColor' back to its original value after being used as temporary storage
+        samples.colorize(frame, palette, frame.length);
+        supersampledFraction = samples.getFraction();
+        renderMetrics.recordColorize(System.nanoTime() - start);
     }
 
     /**
      * This logs the position of pressed mouse event
      * for pan and zoom operations.
+     * The colored graph is kept, so the new view can be previewed while dragging.
      * @param mouseEvent The mouse event.
      * @param selectionContext The graphics context of the canvas.
      * @param pan The pan button indicating pan or zoom operations.
@@ -118,21 +141,33 @@ public class Model {
         } else {
             area.setX(mouseDownX);
             area.setY(mouseDownY);
+            if (preview == null) {
+                preview = new WritableImage(drawSize, drawSize);
+            }
+            preview.getPixelWriter().setPixels(0, 0, drawSize, drawSize, PixelFormat.getIntArgbInstance(), frame, 0, drawSize);
         }
     }
 
     /**
      * This logs the position of dragged mouse event
      * and draw a line/ square for pan and zoom operations.
+     * The view is previewed at once from the current graph: a pan moves the canvas,
+     * a zoom shows the selected square scaled up in an inset.
      * @param mouseEvent The mouse event.
+     * @param canvas The canvas showing the graph.
      * @param selectionContext The graphics context of the canvas.
      * @param pan The pan button indicating pan or zoom operations.
      * @param area The square used for zoom operations.
      */
-    public static void logDragged(MouseEvent mouseEvent, GraphicsContext selectionContext, RadioButton pan, Rectangle area) {
+    public static void logDragged(MouseEvent mouseEvent, Canvas canvas, GraphicsContext selectionContext, RadioButton pan, Rectangle area) {
         selectionContext.clearRect(0, 0, selectionContext.getCanvas().getWidth(), selectionContext.getCanvas().getHeight()); // clear previous lines/ squares
         if (pan.isSelected()) {
             selectionContext.strokeLine(mouseDownX, mouseDownY, mouseEvent.getX(), mouseEvent.getY());  // draw a straight line
+            double xShift = Math.round(mouseEvent.getX() - mouseDownX); // the view moves towards the mouse, so the graph moves the other way
+            double yShift = Math.round(mouseEvent.getY() - mouseDownY);
+            canvas.setTranslateX(-xShift); // moved by the scene graph, so nothing is drawn again
+            canvas.setTranslateY(-yShift);
+            canvas.setClip(new Rectangle(xShift, yShift, drawSize, drawSize)); // in the canvas' own coordinates, keeps it inside its place
         } else {
             deltaX = Math.abs(mouseEvent.getX() - mouseDownX);
             deltaY = Math.abs(mouseEvent.getY() - mouseDownY);
@@ -140,23 +175,40 @@ public class Model {
             area.setX(Math.min(mouseEvent.getX(), mouseDownX)); // does not matter even if out of bound
             area.setY(Math.min(mouseEvent.getY(), mouseDownY));
             selectionContext.strokeRect(area.getX(), area.getY(), delta, delta); // this just shows where the user selected
+
+            double x = Math.max(0, area.getX()); // the part of the square within the graph
+            double y = Math.max(0, area.getY());
+            double length = Math.min(delta, Math.min(drawSize - x, drawSize - y));
+            if (length >= 1) {
+                double insetX = x + length > drawSize - previewSize - 2 * previewMargin && y + length > drawSize - previewSize - 2 * previewMargin
+                        ? previewMargin : drawSize - previewSize - previewMargin; // bottom right, or bottom left if the square is there
+                double insetY = drawSize - previewSize - previewMargin;
+                selectionContext.drawImage(preview, x, y, length, length, insetX, insetY, previewSize, previewSize);
+                selectionContext.strokeRect(insetX, insetY, previewSize, previewSize);
+            }
         }
     }
 
     /**
      * This logs the position of released mouse event
      * for pan and zoom operations.
+     * The canvas keeps the preview of the new view until the render replaces it.
      * @param mouseEvent The mouse event.
+     * @param canvas The canvas showing the graph.
      * @param selectionContext The graphics context of the canvas.
      * @param pan The pan button indicating pan or zoom operations.
      * @param area The square used for zoom operations.
      */
-    public static void logReleased(MouseEvent mouseEvent, GraphicsContext selectionContext, RadioButton pan, Rectangle area) {
+    public static void logReleased(MouseEvent mouseEvent, Canvas canvas, GraphicsContext selectionContext, RadioButton pan, Rectangle area) {
         selectionContext.clearRect(0, 0, selectionContext.getCanvas().getWidth(), selectionContext.getCanvas().getHeight()); // clear previous lines/ squares
         deltaX = mouseEvent.getX() - mouseDownX; // negative value is needed by pan operations
         deltaY = mouseEvent.getY() - mouseDownY;
         if (pan.isSelected()) {
             calculatePan();
+            canvas.setTranslateX(0);
+            canvas.setTranslateY(0);
+            canvas.setClip(null);
+            drawShifted(canvas, (int) deltaX, (int) deltaY); // the pan is rounded to whole pixels by 'calculatePan'
         } else { // resizing is done before calculation to exclude areas out of bound
             double tempX = Math.min(mouseEvent.getX(), mouseDownX) < 0 ? 0 : Math.min(mouseEvent.getX(), mouseDownX); // the lower limit is 0
             double tempY = Math.min(mouseEvent.getY(), mouseDownY) < 0 ? 0 : Math.min(mouseEvent.getY(), mouseDownY);
@@ -167,86 +219,110 @@ public class Model {
             delta = Math.max(deltaX, deltaY); // the length of the square depends on the longer side
             delta = area.getX() + delta > drawSize ? drawSize - area.getX() : delta; // the upper limit is the draw size
             delta = area.getY() + delta > drawSize ? drawSize - area.getY() : delta;
-            calculateZoom(area);
+            if (delta >= 1) { // a click without dragging selects no area and keeps the view
+                calculateZoom(area);
+                if (preview != null) {
+                    canvas.getGraphicsContext2D().drawImage(preview, area.getX(), area.getY(), delta, delta, 0, 0, drawSize, drawSize);
+                }
+            }
         }
     }
 
     /**
-     * This calculates the mandelbrot set using current parameters, updates current magnification
-     * and store the result in a 2D integer array.
+     * This draws the colored graph moved by whole pixels, showing the uncovered strips in black.
+     * @param canvas The canvas to be drawn.
+     * @param xShift The number of pixels the view moved along the x-axis.
+     * @param yShift The number of pixels the view moved along the y-axis.
      */
-    public static void setGraph() {
-        graph = mandelCalc.calcMandelbrotSet(drawSize, drawSize, currentMinReal, currentMaxReal,
-                currentMinImaginary, currentMaxImaginary,
-                currentMaxIterations, currentRadiusSquared);
-
-        currentMagnification = (MandelbrotCalculator.INITIAL_MAX_REAL - MandelbrotCalculator.INITIAL_MIN_REAL) /(currentMaxReal - currentMinReal);
-        currentMagnification *= (MandelbrotCalculator.INITIAL_MAX_IMAGINARY - MandelbrotCalculator.INITIAL_MIN_IMAGINARY) / (currentMaxImaginary - currentMinImaginary);
-        // this calculates magnification using the areas of the original & new graph
+    public static void drawShifted(Canvas canvas, int xShift, int yShift) {
+        GraphicsContext graphContext = canvas.getGraphicsContext2D();
+        graphContext.setFill(Color.BLACK);
+        graphContext.fillRect(0, 0, drawSize, drawSize);
+        int width = drawSize - Math.abs(xShift);
+        int height = drawSize - Math.abs(yShift);
+        if (width > 0 && height > 0) { // pixel (x, y) of the new view is pixel (x + xShift, y + yShift) of the old one
+            graphContext.getPixelWriter().setPixels(Math.max(0, -xShift), Math.max(0, -yShift), width, height, PixelFormat.getIntArgbInstance(),
+                    frame, Math.max(0, yShift) * drawSize + Math.max(0, xShift), drawSize);
+        }
     }
 
     /**
-     * This calculates new parameters for 'setGraph' method and
+     * This updates current magnification and starts rendering the graph in the background.
+     * The canvas is updated by the render service after each pass. A graph the session already holds,
+     * e.g. after a color change, is only colored again.
+     */
+    public static void renderGraph() {
+        setMagnification();
+        renderService.render();
+    }
+
+    /**
+     * This calculates current magnification from current parameters.
+     */
+    public static void setMagnification() {
+        currentMagnification = currentViewport.getMagnification(); // this calculates magnification using the areas of the original & new graph
+    }
+
+    /**
+     * This calculates new parameters for 'renderGraph' method and
      * thereby execute pan operation.
      */
     public static void calculatePan() {
-        String undo = "Pan " + currentMinReal + " " + currentMaxReal + " " +
-                currentMinImaginary  + " " + currentMaxImaginary  + " "; // this logs the parameters to the stacks for undo/ redo
-
-        // 'xScale' & 'yScale' are declared locally to ensure they must be up-to-date
-        double xScale = (currentMaxReal - currentMinReal) / drawSize; // used to calculate offset from pixel positions
-        double yScale = (currentMaxImaginary - currentMinImaginary) / drawSize;
-        currentMinReal += xScale * deltaX;
-        currentMaxReal += xScale * deltaX;
-        currentMinImaginary += yScale * deltaY;
-        currentMaxImaginary += yScale * deltaY;
-
-        undo +=  currentMinReal + " " + currentMaxReal + " " +
-                currentMinImaginary  + " " + currentMaxImaginary; // this logs the new parameters
+        deltaX = Math.round(deltaX); // whole pixels only, so the previous graph can be reused
+        deltaY = Math.round(deltaY);
+        String undo = "Pan " + currentViewport.getBounds() + " "; // this logs the parameters to the stacks for undo/ redo
+
+        currentViewport = currentViewport.pan((int) deltaX, (int) deltaY, drawSize, drawSize);
+
+        undo += currentViewport.getBounds(); // this logs the new parameters
         undoStack.addElement(undo);
     }
 
     /**
-     * This calculates new parameters for 'setGraph' method and
+     * This calculates new parameters for 'renderGraph' method and
      * thereby execute zoom operation.
      */
     public static void calculateZoom(Rectangle area) {
-        String undo = "Zoom " + currentMinReal + " " + currentMaxReal + " " +
-                currentMinImaginary  + " " + currentMaxImaginary  + " "; // this logs the parameters to the stacks for undo/ redo
-
-        // 'xScale' & 'yScale' are declared locally to ensure they must be up-to-date
-        double xScale = (currentMaxReal - currentMinReal) / drawSize;  // used to calculate offset from pixel positions
-        double yScale = (currentMaxImaginary - currentMinImaginary) / drawSize;
-        double tempMinReal = currentMinReal + xScale * area.getX();
-        double tempMaxReal = currentMinReal + xScale * (area.getX() + delta);
-        double tempMinImaginary = currentMinImaginary + yScale * area.getY();
-        double tempMaxImaginary = currentMinImaginary + yScale * (area.getY() + delta);
-
-        currentMinReal = tempMinReal;
-        currentMaxReal = tempMaxReal;
-        currentMinImaginary = tempMinImaginary;
-        currentMaxImaginary = tempMaxImaginary;
-
-        undo +=  currentMinReal + " " + currentMaxReal + " " + currentMinImaginary  + " " + currentMaxImaginary;  // this logs the new parameters
+        String undo = "Zoom " + currentViewport.getBounds() + " "; // this logs the parameters to the stacks for undo/ redo
+
+        currentViewport = currentViewport.zoom(area.getX(), area.getY(), delta, drawSize, drawSize);
+
+        undo += currentViewport.getBounds(); // this logs the new parameters
         undoStack.addElement(undo);
     }
 
     /**
-     * This checks if show magnification function is enabled and draw correspondingly.
+     * This checks if show magnification function and the render metrics are enabled and draw correspondingly.
      * @param canvas The canvas to be drawn.
      * @param showZoom The button indicating the function is enabled or not.
      */
     public static void setShowZoom(Canvas canvas, RadioButton showZoom) {
-        final int length = 350;
+        final int length = samplesPerAxis > 1 ? 550 : 350; // room for the supersampled fraction
+        final int metricsLength = 800;
         final int height = 20;
         GraphicsContext graphContext = canvas.getGraphicsContext2D();
+        int lines = (showZoom.isSelected() ? 1 : 0) + (isShowMetrics ? 1 : 0);
+        if (lines < overlayLines) {
+            draw(overlayLines * height, canvas); // this overwrites the lines no longer covered with the content of the graph
+        }
+        overlayLines = lines;
+        int line = 0;
         if (showZoom.isSelected()) {
             graphContext.setFill(Color.BLACK); // this ensures the text is visible under any setting
             graphContext.fillRect(0, 0, length, height);
             graphContext.setFill(Color.WHITE);
-            graphContext.fillText("Current magnification: " + currentMagnification + "x", 10, 15);
-        } else {
-            draw(currentColor, height, canvas); // this overwrites the content of the first 20 lines with the content of the graph
+            String text = "Current magnification: " + currentMagnification + "x";
+            if (samplesPerAxis > 1) {
+                text += String.format(", supersampled: %.1f%%", 100 * supersampledFraction);
+            }
+            graphContext.fillText(text, 10, 15);
+            line++;
+        }
+        if (isShowMetrics) {
+            graphContext.setFill(Color.BLACK);
+            graphContext.fillRect(0, line * height, metricsLength, height);
+            graphContext.setFill(Color.WHITE);
+            graphContext.fillText(renderMetrics.getSummary(), 10, line * height + 15);
         }
     }
 
@@ -272,23 +348,19 @@ public class Model {
             switch (type) {
                 case "Pan":
                 case "Zoom":
-                    currentMinReal = undoFlag ? Double.parseDouble(item.split(" ")[1]) : Double.parseDouble(item.split(" ")[5]);
-                    currentMaxReal = undoFlag ? Double.parseDouble(item.split(" ")[2]) : Double.parseDouble(item.split(" ")[6]);
-                    currentMinImaginary = undoFlag ? Double.parseDouble(item.split(" ")[3]) : Double.parseDouble(item.split(" ")[7]);
-                    currentMaxImaginary = undoFlag ? Double.parseDouble(item.split(" ")[4]) : Double.parseDouble(item.split(" ")[8]);
-                    setGraph();
-                    draw(canvas);
+                    int offset = undoFlag ? 1 : 5; // the old bounds come first
+                    currentViewport = currentViewport.withBounds(new BigDecimal(item.split(" ")[offset]), new BigDecimal(item.split(" ")[offset + 1]),
+                            new BigDecimal(item.split(" ")[offset + 2]), new BigDecimal(item.split(" ")[offset + 3]));
+                    renderGraph();
                     break;
                 case "Color":
                     currentColor = undoFlag ? Color.valueOf(item.split(" ")[1]) : Color.valueOf(item.split(" ")[2]);
-                    draw(canvas);
+                    renderGraph(); // colors the graph again
                     break;
                 case "Iterations":
-                    currentMaxIterations = undoFlag ? Integer.parseInt(item.split(" ")[1]) : Integer.parseInt(item.split(" ")[2]);
-                    maxIterations.setPromptText(String.valueOf(currentMaxIterations));
-                    colorScale = colorMaxValue / currentMaxIterations;
-                    setGraph();
-                    draw(canvas);
+                    currentViewport = currentViewport.withMaxIterations(undoFlag ? Integer.parseInt(item.split(" ")[1]) : Integer.parseInt(item.split(" ")[2]));
+                    maxIterations.setPromptText(String.valueOf(currentViewport.getMaxIterations()));
+                    renderGraph();
                     break;
                 case "ToggleZoom":
                     showZoom.setSelected(!showZoom.isSelected());
@@ -0,0 +1,271 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * This class renders the Buddhabrot: instead of the escape count of each pixel, it shows how often the orbits of
+ * random points C pass through each pixel. The Buddhabrot traces the orbits of points which escape, the anti-Buddhabrot
+ * those of points which stay bounded.
+ * Points are sampled from the square from -2 - 2i to 2 + 2i, where every escaping orbit starts. An escape-time pass
+ * over a coarse grid of that square finds the cells on the boundary of the set, which hold the long orbits, and most
+ * points are drawn from those cells. Each orbit is weighted by the inverse of its sampling density, so the image
+ * converges to the same density as with uniform sampling.
+ * Sampling runs in rounds on every core. Each thread adds to its own histogram, so no pixel is ever contended,
+ * and the histograms are added to the density after each round, which can then be shown while it converges.
+ */
+public class OrbitDensity implements AutoCloseable {
+    public static final int gridSize = 256; // cells along each axis of the sampled square
+    private static final double sampledMin = -2;
+    private static final double sampledSize = 4;
+    private static final double importanceShare = 0.9; // of the samples drawn from boundary cells, the rest from all cells
+
+    private final int xResolution;
+    private final int yResolution;
+    private final double minReal;
+    private final double minImaginary;
+    private final double xScale; // pixels per unit
+    private final double yScale;
+    private final int maxIterations;
+    private final int minIterations;
+    private final boolean isAnti;
+    private final int[] boundaryCells;
+    private final boolean[] isBoundary; // indexed by cell
+    private final double boundaryWeight;
+    private final double otherWeight;
+    private final ExecutorService workers;
+    private final double[][] histograms; // one per thread, empty between rounds; a float would stop counting at 2^24 hits of a pixel
+    private final double[] density;
+    private final SplittableRandom random;
+    private long samples = 0;
+    private long orbitPoints = 0;
+
+    /**
+     * This creates a renderer and runs its escape-time pass.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param minReal The lower real bound of the view.
+     * @param maxReal The upper real bound of the view.
+     * @param minImaginary The lower imaginary bound of the view.
+     * @param maxImaginary The upper imaginary bound of the view.
+     * @param maxIterations The max. iterations of an orbit.
+     * @param minIterations The fewest iterations of an escaping orbit for it to be traced, 0 for all.
+     * @param isAnti The flag indicating the orbits of bounded points are traced instead of escaping ones.
+     * @param threads The number of threads sampling.
+     * @param seed The seed of the random points, so a render can be repeated.
+     */
+    public OrbitDensity(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary,
+                        int maxIterations, int minIterations, boolean isAnti, int threads, long seed) {
+        if (xResolution < 1 || yResolution < 1 || maxIterations < 1 || threads < 1 || !(maxReal > minReal) || !(maxImaginary > minImaginary)) {
+            throw new IllegalArgumentException("The resolution, iterations and threads must be positive and the bounds increasing");
+        }
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.minReal = minReal;
+        this.minImaginary = minImaginary;
+        this.xScale = xResolution / (maxReal - minReal);
+        this.yScale = yResolution / (maxImaginary - minImaginary);
+        this.maxIterations = maxIterations;
+        this.minIterations = minIterations;
+        this.isAnti = isAnti;
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "orbit-density");
+            thread.setDaemon(true);
+            return thread;
+        });
+        histograms = new double[threads][xResolution * yResolution];
+        density = new double[xResolution * yResolution];
+        random = new SplittableRandom(seed);
+
+        boundaryCells = findBoundaryCells(maxIterations);
+        isBoundary = new boolean[gridSize * gridSize];
+        for (int cell : boundaryCells) {
+            isBoundary[cell] = true;
+        }
+        int cells = gridSize * gridSize;
+        double boundaryDensity = importanceShare / Math.max(1, boundaryCells.length) + (1 - importanceShare) / cells; // per cell
+        boundaryWeight = 1 / (cells * boundaryDensity); // relative to uniform sampling
+        otherWeight = 1 / (1 - importanceShare);
+    }
+
+    /**
+     * This samples another round of points and adds their orbits to the density.
+     * @param count The number of points to sample, split between the threads.
+     * @throws Exception If a thread failed.
+     */
+    public void sample(long count) throws Exception {
+        List<Future<Long>> rounds = new ArrayList<>();
+        for (int index = 0; index < histograms.length; index++) {
+            double[] histogram = histograms[index];
+            SplittableRandom threadRandom = random.split(); // split here, so the points do not depend on scheduling
+            long share = count / histograms.length + (index < count % histograms.length ? 1 : 0);
+            rounds.add(workers.submit(() -> sample(histogram, threadRandom, share)));
+        }
+        for (Future<Long> round : rounds) {
+            orbitPoints += round.get();
+        }
+        samples += 2 * count; // each point is also counted as its mirror image, see 'sample' below
+
+        for (double[] histogram : histograms) {
+            for (int index = 0; index < density.length; index++) {
+                density[index] += histogram[index];
+            }
+            Arrays.fill(histogram, 0);
+        }
+    }
+
+    /**
+     * @return The number of points sampled so far, counting mirror images.
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return The number of orbit points added to the density so far.
+     */
+    public long getOrbitPoints() {
+        return orbitPoints;
+    }
+
+    /**
+     * @return The fraction of the grid cells on the boundary of the set.
+     */
+    public double getBoundaryFraction() {
+        return (double) boundaryCells.length / (gridSize * gridSize);
+    }
+
+    /**
+     * This colors the density. The brightness is proportional to the density up to a high percentile of it,
+     * so a few very dense pixels near the real axis do not darken the rest.
+     * @param pixels The buffer receiving the colors (ARGB), row-major.
+     * @param palette The colors from dark to bright, e.g. from 'ColorSet.getPalette'.
+     */
+    public void colorize(int[] pixels, int[] palette) {
+        double[] dense = Arrays.stream(density).filter(value -> value > 0).toArray();
+        double white = 1;
+        if (dense.length > 0) {
+            Arrays.sort(dense);
+            white = dense[(int) (0.999 * (dense.length - 1))];
+        }
+        int levels = palette.length - 1; // the last color is the one of the set, black for most palettes
+        for (int index = 0; index < density.length; index++) {
+            double brightness = Math.min(1, density[index] / white);
+            pixels[index] = palette[(int) (brightness * (levels - 1))];
+        }
+    }
+
+    /**
+     * This stops the sampling threads.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * This samples points on one thread and adds their orbits to its histogram.
+     * The orbit of the conjugate of C is the conjugate of the orbit of C, and the sampling is symmetric about the real axis,
+     * so every orbit is also added mirrored at no cost.
+     * @param histogram The histogram of the thread.
+     * @param random The random numbers of the thread.
+     * @param count The number of points to sample.
+     * @return The number of orbit points added.
+     */
+    private long sample(double[] histogram, SplittableRandom random, long count) {
+        double cellSize = sampledSize / gridSize;
+        double[] orbitReal = new double[maxIterations];
+        double[] orbitImaginary = new double[maxIterations];
+        long added = 0;
+        for (long sample = 0; sample < count; sample++) {
+            int cell = boundaryCells.length > 0 && random.nextDouble() < importanceShare
+                    ? boundaryCells[random.nextInt(boundaryCells.length)] : random.nextInt(gridSize * gridSize);
+            double weight = isBoundary[cell] ? boundaryWeight : otherWeight; // the same whichever way a boundary cell was drawn
+            double cReal = sampledMin + (cell % gridSize + random.nextDouble()) * cellSize;
+            double cImaginary = sampledMin + (cell / gridSize + random.nextDouble()) * cellSize;
+            if (!isAnti && MandelbrotCalculator.isInterior(cReal, cImaginary)) {
+                continue; // never escapes
+            }
+
+            int iterations = 0;
+            double zr = 0;
+            double zi = 0;
+            while (iterations < maxIterations && zr * zr + zi * zi <= MandelbrotCalculator.DEFAULT_RADIUS_SQUARED) {
+                double nzr = zr * zr - zi * zi + cReal;
+                zi = 2 * zr * zi + cImaginary;
+                zr = nzr;
+                orbitReal[iterations] = zr;
+                orbitImaginary[iterations] = zi;
+                iterations++;
+            }
+            boolean escaped = zr * zr + zi * zi > MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+            if (isAnti == escaped || (escaped && iterations < minIterations)) {
+                continue;
+            }
+            for (int point = 0; point < iterations; point++) {
+                int x = (int) Math.floor((orbitReal[point] - minReal) * xScale);
+                if (x < 0 || x >= xResolution) {
+                    continue;
+                }
+                int y = (int) Math.floor((orbitImaginary[point] - minImaginary) * yScale);
+                if (y >= 0 && y < yResolution) {
+                    histogram[y * xResolution + x] += weight;
+                    added++;
+                }
+                int mirrored = (int) Math.floor((-orbitImaginary[point] - minImaginary) * yScale);
+                if (mirrored >= 0 && mirrored < yResolution) {
+                    histogram[mirrored * xResolution + x] += weight;
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * This runs the escape-time pass over the grid and finds the cells on the boundary of the set:
+     * those with a corner inside and a neighbouring corner outside, and their neighbours.
+     * The result is made symmetric about the real axis, like the set.
+     * @param maxIterations The max. iterations of the pass.
+     * @return The boundary cells in ascending order.
+     */
+    private static int[] findBoundaryCells(int maxIterations) {
+        int corners = gridSize + 1;
+        int[] escape = new int[corners * corners];
+        MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+        double maxSampled = sampledMin + sampledSize * corners / gridSize; // corner gridSize is at +2
+        mandelCalc.calcMandelbrotRegion(escape, corners, corners, 0, 0, corners, corners, mandelCalc.getPixelFunction(
+                new PixelGrid(corners, corners, sampledMin, maxSampled, sampledMin, maxSampled), maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED), () -> false);
+        boolean[] isMixed = new boolean[gridSize * gridSize];
+        for (int y = 0; y < gridSize; y++) {
+            for (int x = 0; x < gridSize; x++) {
+                int corner = y * corners + x;
+                boolean inside = escape[corner] == maxIterations;
+                isMixed[y * gridSize + x] = inside != (escape[corner + 1] == maxIterations) || inside != (escape[corner + corners] == maxIterations)
+                        || inside != (escape[corner + corners + 1] == maxIterations);
+            }
+        }
+        boolean[] isBoundary = new boolean[gridSize * gridSize];
+        for (int y = 0; y < gridSize; y++) {
+            for (int x = 0; x < gridSize; x++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int ny = y + dy;
+                        int nx = x + dx;
+                        if (nx >= 0 && ny >= 0 && nx < gridSize && ny < gridSize
+                                && (isMixed[ny * gridSize + nx] || isMixed[(gridSize - 1 - ny) * gridSize + nx])) {
+                            isBoundary[y * gridSize + x] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return IntStream.range(0, isBoundary.length).filter(cell -> isBoundary[cell]).toArray();
+    }
+}
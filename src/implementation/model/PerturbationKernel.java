@@ -0,0 +1,112 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class iterates pixels of deep zooms, where neighbouring pixels can no longer be told apart with doubles.
+ * The orbit of a single reference point at the centre of the view is calculated once at the needed precision,
+ * and each pixel only iterates its small difference to that orbit in doubles:
+ * with Z = X + d and C = X_c + dc, d_n+1 = 2 X_n d_n + d_n^2 + dc.
+ * When the difference grows larger than the full value of Z, or the reference orbit ends, the pixel
+ * continues from the start of the reference orbit with its full value as the difference. This avoids
+ * the glitches caused by the lost precision of the difference.
+ */
+class PerturbationKernel implements IntBinaryOperator {
+    private static final int EXTRA_DIGITS = 20; // digits kept beyond those needed to tell neighbouring pixels apart
+
+    private final double[] orbitReal; // the reference orbit X_0, X_1, ... rounded to doubles
+    private final double[] orbitImaginary;
+    private final int orbitLength;
+    private final int xCentre;
+    private final int yCentre;
+    private final double realStep;
+    private final double imaginaryStep;
+    private final int maxIterations;
+    private final double radiusSquared;
+
+    /**
+     * This calculates the reference orbit for the given view.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param view The view.
+     */
+    PerturbationKernel(int xResolution, int yResolution, Viewport view) {
+        double pixelSpacing = view.getPixelSpacing(xResolution, yResolution);
+        if (!(pixelSpacing > 0)) { // the digits of the reference orbit follow from the spacing
+            throw new IllegalArgumentException("The pixel spacing must be positive: " + pixelSpacing);
+        }
+        MathContext context = new MathContext(EXTRA_DIGITS + (int) Math.ceil(-Math.log10(pixelSpacing)));
+        BigDecimal minReal = view.getMinReal();
+        BigDecimal minImaginary = view.getMinImaginary();
+        BigDecimal width = view.getMaxReal().subtract(minReal);
+        BigDecimal height = view.getMaxImaginary().subtract(minImaginary);
+        xCentre = xResolution / 2;
+        yCentre = yResolution / 2;
+        realStep = width.doubleValue() / xResolution;
+        imaginaryStep = height.doubleValue() / yResolution;
+        maxIterations = view.getMaxIterations();
+        radiusSquared = view.getRadiusSquared();
+
+        // the reference point is pixel (xCentre, yCentre), the same C as calcMandelbrotSet uses for it
+        BigDecimal cReal = minReal.add(width.multiply(BigDecimal.valueOf(xCentre)).divide(BigDecimal.valueOf(xResolution), context), context);
+        BigDecimal cImaginary = minImaginary.add(height.multiply(BigDecimal.valueOf(yCentre)).divide(BigDecimal.valueOf(yResolution), context), context);
+        orbitReal = new double[maxIterations + 1];
+        orbitImaginary = new double[maxIterations + 1];
+        BigDecimal zr = BigDecimal.ZERO;
+        BigDecimal zi = BigDecimal.ZERO;
+        int length = 0;
+        while (true) {
+            double zrValue = zr.doubleValue();
+            double ziValue = zi.doubleValue();
+            orbitReal[length] = zrValue;
+            orbitImaginary[length] = ziValue;
+            length++;
+            if (length > maxIterations || zrValue * zrValue + ziValue * ziValue > radiusSquared) {
+                break; // escaped points are still stored, so pixels can compare against them before rebasing
+            }
+            BigDecimal nzr = zr.multiply(zr, context).subtract(zi.multiply(zi, context), context).add(cReal, context);
+            zi = zr.multiply(zi, context).multiply(BigDecimal.valueOf(2), context).add(cImaginary, context);
+            zr = nzr;
+        }
+        orbitLength = length;
+    }
+
+    /**
+     * This iterates the pixel (x, y), counting iterations the same way as 'MandelbrotCalculator.calcMandel'.
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @return The number of iterations until Z escaped, or max. iterations if it did not.
+     */
+    @Override
+    public int applyAsInt(int x, int y) {
+        double dcReal = (x - xCentre) * realStep;
+        double dcImaginary = (y - yCentre) * imaginaryStep;
+        double dr = 0;
+        double di = 0;
+        int reference = 0; // the index into the reference orbit, which restarts on rebasing
+        int last = orbitLength - 1;
+        for (int iterations = 0; iterations < maxIterations; iterations++) {
+            double zr = orbitReal[reference] + dr;
+            double zi = orbitImaginary[reference] + di;
+            double magnitude = zr * zr + zi * zi;
+            if (magnitude > radiusSquared) {
+                return iterations + 1;
+            }
+            if (magnitude < dr * dr + di * di || reference == last) { // rebase, Z_0 of the reference orbit is 0
+                dr = zr;
+                di = zi;
+                reference = 0;
+            }
+            double xr = orbitReal[reference];
+            double xi = orbitImaginary[reference];
+            double ndr = 2 * (xr * dr - xi * di) + dr * dr - di * di + dcReal;
+            double ndi = 2 * (xr * di + xi * dr) + 2 * dr * di + dcImaginary;
+            dr = ndr;
+            di = ndi;
+            reference++;
+        }
+        return maxIterations;
+    }
+}
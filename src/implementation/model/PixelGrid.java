@@ -0,0 +1,131 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * This class places the pixels of a render in the complex plane, in doubles: pixel (x, y) has
+ * C = ((realIndex + x) * realStep + realOffset) + i * ((imaginaryIndex + y) * imaginaryStep + imaginaryOffset).
+ * A grid from the bounds alone has the indexes 0, which is the plain min + x * step.
+ * An anchored grid counts the pixels from 0 in multiples of the exact pixel size, so the offsets are below one pixel.
+ * A view moved by whole pixels with 'Viewport.pan' keeps its pixel size and offsets and only changes the indexes,
+ * which are exact in doubles, so every pixel it shares with the old view has exactly the same C.
+ * It is immutable.
+ */
+public final class PixelGrid {
+    private static final BigDecimal maxIndex = BigDecimal.valueOf(1L << 52); // index + x stays exact in doubles
+
+    final int xResolution;
+    final int yResolution;
+    final double realIndex;
+    final double realStep;
+    final double realOffset;
+    final double imaginaryIndex;
+    final double imaginaryStep;
+    final double imaginaryOffset;
+
+    /**
+     * This creates the grid of a view given by its rounded bounds, with C = min + x * step.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param minReal The lower real bound of the view.
+     * @param maxReal The upper real bound of the view.
+     * @param minImaginary The lower imaginary bound of the view.
+     * @param maxImaginary The upper imaginary bound of the view.
+     */
+    public PixelGrid(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary) {
+        this(xResolution, yResolution, 0, (maxReal - minReal) / xResolution, minReal, 0, (maxImaginary - minImaginary) / yResolution, minImaginary);
+    }
+
+    private PixelGrid(int xResolution, int yResolution, double realIndex, double realStep, double realOffset,
+                      double imaginaryIndex, double imaginaryStep, double imaginaryOffset) {
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.realIndex = realIndex;
+        this.realStep = realStep;
+        this.realOffset = realOffset;
+        this.imaginaryIndex = imaginaryIndex;
+        this.imaginaryStep = imaginaryStep;
+        this.imaginaryOffset = imaginaryOffset;
+    }
+
+    /**
+     * This creates the grid of a view anchored at the multiples of its exact pixel size.
+     * Far from the origin, where the index would not be exact in doubles, the grid is not anchored.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param view The view.
+     * @return The grid.
+     */
+    public static PixelGrid anchored(int xResolution, int yResolution, Viewport view) {
+        BigDecimal minReal = view.getMinReal();
+        BigDecimal minImaginary = view.getMinImaginary();
+        BigDecimal realStep = Viewport.getPixelSize(view.getMaxReal().subtract(minReal), xResolution);
+        BigDecimal imaginaryStep = Viewport.getPixelSize(view.getMaxImaginary().subtract(minImaginary), yResolution);
+        BigDecimal realIndex = getIndex(minReal, realStep, maxIndex);
+        BigDecimal imaginaryIndex = getIndex(minImaginary, imaginaryStep, maxIndex);
+        return new PixelGrid(xResolution, yResolution, realIndex.doubleValue(), realStep.doubleValue(),
+                minReal.subtract(realIndex.multiply(realStep)).doubleValue(), imaginaryIndex.doubleValue(), imaginaryStep.doubleValue(),
+                minImaginary.subtract(imaginaryIndex.multiply(imaginaryStep)).doubleValue());
+    }
+
+    /**
+     * This finds the number of whole pixels from 0 to the first pixel of a view along an axis, rounded down.
+     * @param min The lower bound of the view along the axis.
+     * @param step The exact pixel size along the axis.
+     * @param limit The largest magnitude of the index which the arithmetic can hold exactly.
+     * @return The index, or 0 if it would reach the limit, which places the first pixel at 'min' itself.
+     */
+    static BigDecimal getIndex(BigDecimal min, BigDecimal step, BigDecimal limit) {
+        BigDecimal[] division = min.divideAndRemainder(step); // the quotient is rounded towards 0
+        BigDecimal index = division[1].signum() < 0 ? division[0].subtract(BigDecimal.ONE) : division[0];
+        return index.abs().compareTo(limit) < 0 ? index : BigDecimal.ZERO;
+    }
+
+    /**
+     * @param x The column of a pixel.
+     * @return The real component of C of the pixels in the column.
+     */
+    public double getReal(int x) {
+        return (realIndex + x) * realStep + realOffset;
+    }
+
+    /**
+     * @param y The row of a pixel.
+     * @return The imaginary component of C of the pixels in the row.
+     */
+    public double getImaginary(int y) {
+        return (imaginaryIndex + y) * imaginaryStep + imaginaryOffset;
+    }
+
+    /**
+     * @return The number of pixels on the x-axis.
+     */
+    public int getXResolution() {
+        return xResolution;
+    }
+
+    /**
+     * @return The number of pixels on the y-axis.
+     */
+    public int getYResolution() {
+        return yResolution;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PixelGrid)) {
+            return false;
+        }
+        PixelGrid grid = (PixelGrid) other;
+        return xResolution == grid.xResolution && yResolution == grid.yResolution
+                && realIndex == grid.realIndex && realStep == grid.realStep && realOffset == grid.realOffset
+                && imaginaryIndex == grid.imaginaryIndex && imaginaryStep == grid.imaginaryStep && imaginaryOffset == grid.imaginaryOffset;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * xResolution + yResolution; // the offsets may be -0.0, which equals 0.0 but has another hash
+        hash = 31 * hash + Double.hashCode(realStep);
+        return 31 * hash + Double.hashCode(imaginaryStep);
+    }
+}
@@ -0,0 +1,287 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes a PNG image band by band, so an image of any size is written without holding it in memory.
+ * Each band is compressed on its own by 'encode' into raw deflate blocks ending at a byte boundary with an empty
+ * dictionary, so bands can be encoded in parallel and simply concatenated. The writer adds the zlib header, stores
+ * each band in its own IDAT chunk and combines the checksums of the bands for the zlib trailer.
+ * After each band the file is forced to disk and a checkpoint records its length and checksum, so an interrupted
+ * image is resumed from the last complete band. The checkpoint is removed once the image is complete.
+ */
+public class PngBandWriter implements Closeable {
+    private static final byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] zlibHeader = {0x78, (byte) 0x9c}; // deflate with a 32 KB window, default level
+    private static final int adlerBase = 65521;
+    private static final int filterSub = 1; // the first row of a band, as the row above is in another band
+    private static final int filterUp = 2;
+
+    private final File checkpoint;
+    private final int height;
+    private final int bandHeight;
+    private final String description;
+    private final FileChannel channel;
+    private int nextBand = 0;
+    private long adler = 1; // the checksum of the rows written so far, 1 for none
+
+    /**
+     * This stores a compressed band.
+     */
+    public static class Band {
+        private final byte[] data;
+        private final int length;
+        private final long adler;
+        private final long rawLength;
+
+        private Band(byte[] data, int length, long adler, long rawLength) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+
+        /**
+         * @return The size of the compressed band in bytes.
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * This opens an image for writing. If a checkpoint of the same image exists, the image is resumed after its last
+     * complete band, otherwise it is started again.
+     * @param file The PNG file.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param bandHeight The number of rows of every band but the last.
+     * @param description What the image shows, e.g. its view and color; a checkpoint of a different image is ignored.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PngBandWriter(File file, int width, int height, int bandHeight, String description) throws IOException {
+        if (width < 1 || height < 1 || bandHeight < 1) {
+            throw new IllegalArgumentException("Width, height and band height must be positive");
+        }
+        if ((3L * width + 1) * bandHeight > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Bands of " + bandHeight + " rows of " + width + " pixels are too large");
+        }
+        this.checkpoint = new File(file.getPath() + ".checkpoint");
+        this.height = height;
+        this.bandHeight = bandHeight;
+        this.description = "width " + width + "\nheight " + height + "\nbandHeight " + bandHeight + "\n" + description + "\n";
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!resume()) {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(13);
+                header.putInt(width).putInt(height).put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0); // 8 bit RGB
+                channel.write(ByteBuffer.wrap(signature), 0);
+                writeChunk("IHDR", header.array(), header.array().length);
+                writeChunk("IDAT", zlibHeader, zlibHeader.length);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of bands of the image.
+     */
+    public int getBands() {
+        return (height + bandHeight - 1) / bandHeight;
+    }
+
+    /**
+     * @return The first band not yet written, e.g. after resuming.
+     */
+    public int getNextBand() {
+        return nextBand;
+    }
+
+    /**
+     * @return The number of rows of every band but the last.
+     */
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * This filters and compresses a band. It only uses its arguments, so bands can be encoded in parallel.
+     * @param pixels The colors of the band (ARGB), row-major; the alpha is ignored.
+     * @param width The width of the image.
+     * @param rows The number of rows of the band.
+     * @param isLast The flag indicating this is the last band of the image, which ends the deflate stream.
+     * @return The compressed band.
+     */
+    public static Band encode(int[] pixels, int width, int rows, boolean isLast) {
+        int rowBytes = 3 * width + 1;
+        byte[] raw = new byte[rowBytes * rows];
+        for (int y = 0; y < rows; y++) {
+            int start = y * rowBytes;
+            raw[start] = (byte) (y == 0 ? filterSub : filterUp);
+            for (int x = 0, pixel = y * width; x < width; x++, pixel++) {
+                int argb = pixels[pixel];
+                raw[start + 1 + 3 * x] = (byte) (argb >> 16);
+                raw[start + 2 + 3 * x] = (byte) (argb >> 8);
+                raw[start + 3 + 3 * x] = (byte) argb;
+            }
+        }
+        for (int y = rows - 1; y >= 0; y--) { // backwards, so the row above is still unfiltered
+            int start = y * rowBytes + 1;
+            if (y == 0) {
+                for (int index = start + rowBytes - 2; index >= start + 3; index--) {
+                    raw[index] -= raw[index - 3];
+                }
+            } else {
+                for (int index = start; index < start + rowBytes - 1; index++) {
+                    raw[index] -= raw[index - rowBytes];
+                }
+            }
+        }
+        Adler32 checksum = new Adler32(); // of the filtered rows, which are the data of the zlib stream
+        checksum.update(raw, 0, raw.length);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true); // raw deflate, the writer adds the zlib wrapper
+        try {
+            deflater.setInput(raw);
+            if (isLast) {
+                deflater.finish();
+            }
+            byte[] data = new byte[raw.length / 2 + 64];
+            int length = 0;
+            while (true) {
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, 2 * data.length);
+                }
+                int written = isLast ? deflater.deflate(data, length, data.length - length)
+                        : deflater.deflate(data, length, data.length - length, Deflater.FULL_FLUSH); // ends at a byte boundary
+                length += written;
+                if (isLast ? deflater.finished() : length < data.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return new Band(data, length, checksum.getValue(), raw.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * This appends the next band to the image and records a checkpoint after it. The last band completes the image.
+     * @param band The band from 'encode', in order.
+     * @throws IOException If the band cannot be written.
+     */
+    public synchronized void write(Band band) throws IOException {
+        if (nextBand >= getBands()) {
+            throw new IllegalStateException("The image is already complete");
+        }
+        writeChunk("IDAT", band.data, band.length);
+        adler = combine(adler, band.adler, band.rawLength);
+        nextBand++;
+        if (nextBand == getBands()) {
+            byte[] trailer = ByteBuffer.allocate(4).putInt((int) adler).array();
+            writeChunk("IDAT", trailer, trailer.length);
+            writeChunk("IEND", new byte[0], 0);
+            channel.force(false);
+            Files.deleteIfExists(checkpoint.toPath());
+        } else {
+            channel.force(false); // the band is on disk before the checkpoint refers to it
+            File temporary = new File(checkpoint.getPath() + ".tmp");
+            String state = description + "nextBand " + nextBand + "\nlength " + channel.size() + "\nadler " + adler + "\n";
+            Files.write(temporary.toPath(), state.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * This closes the file. An incomplete image keeps its checkpoint, so it can be resumed.
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * This continues the image from its checkpoint, if it has one for the same image.
+     * @return true if the image was resumed.
+     * @throws IOException If the checkpoint or the file cannot be read.
+     */
+    private boolean resume() throws IOException {
+        if (!checkpoint.exists()) {
+            return false;
+        }
+        String state = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8);
+        if (!state.startsWith(description)) {
+            System.err.println("Ignoring the checkpoint of a different image: " + checkpoint);
+            return false;
+        }
+        String[] lines = state.substring(description.length()).split("\n");
+        try {
+            int band = Integer.parseInt(lines[0].substring("nextBand ".length()));
+            long length = Long.parseLong(lines[1].substring("length ".length()));
+            long checksum = Long.parseLong(lines[2].substring("adler ".length()));
+            if (band < 1 || band >= getBands() || length > channel.size()) {
+                System.err.println("Ignoring an invalid checkpoint: " + checkpoint);
+                return false;
+            }
+            channel.truncate(length); // drops a band written after the checkpoint
+            nextBand = band;
+            adler = checksum;
+            return true;
+        } catch (RuntimeException e) { // a line is missing or not a number
+            System.err.println("Ignoring an invalid checkpoint: " + checkpoint);
+            return false;
+        }
+    }
+
+    /**
+     * This appends a chunk to the file.
+     * @param type The four letter type of the chunk.
+     * @param data The data of the chunk.
+     * @param length The number of bytes of the data.
+     * @throws IOException If the chunk cannot be written.
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        ByteBuffer chunk = ByteBuffer.allocate(12 + length);
+        chunk.putInt(length).put(name).put(data, 0, length).putInt((int) crc.getValue()).flip();
+        long position = channel.size();
+        while (chunk.hasRemaining()) {
+            position += channel.write(chunk, position);
+        }
+    }
+
+    /**
+     * This combines the Adler-32 checksums of two consecutive pieces of data, as zlib's adler32_combine.
+     * @param first The checksum of the first piece.
+     * @param second The checksum of the second piece.
+     * @param secondLength The length of the second piece in bytes.
+     * @return The checksum of both pieces.
+     */
+    private static long combine(long first, long second, long secondLength) {
+        long remainder = secondLength % adlerBase;
+        long sum1 = first & 0xffff;
+        long sum2 = remainder * sum1 % adlerBase;
+        sum1 += (second & 0xffff) + adlerBase - 1;
+        sum2 += (first >>> 16) + (second >>> 16) + adlerBase - remainder;
+        return sum1 % adlerBase | (sum2 % adlerBase) << 16;
+    }
+}
@@ -0,0 +1,191 @@
+package model;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * This class records the cost of every complete render and of coloring it, so slow views can be told apart
+ * from slow code. The wall times of the recent renders are kept in a rolling window for percentiles and a histogram
+ * with power-of-two buckets. The metrics are published through JMX once registered, and summarised in one line
+ * for the magnification overlay.
+ */
+public class RenderMetrics implements RenderMetricsMXBean {
+    public static final String objectName = "model:type=RenderMetrics";
+    public static final int windowSize = 128; // the number of recent renders kept for percentiles and the histogram
+    public static final int histogramBuckets = 16; // up to 2^14 ms, the last bucket holds the rest
+
+    private final long[] window = new long[windowSize]; // wall times in nanoseconds, a ring buffer
+    private int windowCount = 0;
+    private int windowNext = 0;
+
+    private long renderCount = 0;
+    private String lastKind = "none";
+    private long lastComputeNanos = 0;
+    private long lastColorizeNanos = 0;
+    private long lastIterations = 0;
+    private int lastPixels = 0;
+    private int lastMaxedPixels = 0;
+    private int lastThreads = 0;
+
+    /**
+     * This registers the metrics with the platform MBean server. Registering twice has no effect.
+     * @return false if JMX is not available or refused the registration.
+     */
+    public boolean register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+            return true;
+        } catch (JMException | SecurityException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * This records a complete render.
+     * @param kind How the graph was produced: full, pan, resume or cache.
+     * @param nanos The wall time of the render in nanoseconds.
+     * @param graph The rendered graph.
+     * @param size The number of pixels of the graph.
+     * @param maxIterations The max. iterations of the graph.
+     * @param threads The number of threads which calculated the graph.
+     */
+    public void recordRender(String kind, long nanos, int[] graph, int size, int maxIterations, int threads) {
+        long iterations = 0;
+        int maxedPixels = 0;
+        for (int index = 0; index < size; index++) { // outside the lock, so JMX reads never wait for the scan
+            iterations += graph[index];
+            maxedPixels += graph[index] == maxIterations ? 1 : 0;
+        }
+        synchronized (this) {
+            renderCount++;
+            lastKind = kind;
+            lastComputeNanos = nanos;
+            lastIterations = iterations;
+            lastPixels = size;
+            lastMaxedPixels = maxedPixels;
+            lastThreads = threads;
+            window[windowNext] = nanos;
+            windowNext = (windowNext + 1) % windowSize;
+            windowCount = Math.min(windowCount + 1, windowSize);
+        }
+    }
+
+    /**
+     * This records the coloring of a complete graph.
+     * @param nanos The wall time of the coloring in nanoseconds.
+     */
+    public synchronized void recordColorize(long nanos) {
+        lastColorizeNanos = nanos;
+    }
+
+    /**
+     * @return The metrics of the last render in one line, e.g. for the overlay.
+     */
+    public synchronized String getSummary() {
+        if (renderCount == 0) {
+            return "No render recorded";
+        }
+        return String.format("Render: %.0f ms (%s), color: %.1f ms, %.1f Mpx/s, %.3g iterations, %.1f%% at max., %d threads, p90: %.0f ms",
+                getLastComputeMillis(), lastKind, getLastColorizeMillis(), getLastPixelsPerSecond() / 1e6, (double) lastIterations,
+                100 * getLastMaxedFraction(), lastThreads, getComputeMillisP90());
+    }
+
+    @Override
+    public synchronized long getRenderCount() {
+        return renderCount;
+    }
+
+    @Override
+    public synchronized String getLastKind() {
+        return lastKind;
+    }
+
+    @Override
+    public synchronized double getLastComputeMillis() {
+        return lastComputeNanos / 1e6;
+    }
+
+    @Override
+    public synchronized double getLastColorizeMillis() {
+        return lastColorizeNanos / 1e6;
+    }
+
+    @Override
+    public synchronized long getLastIterations() {
+        return lastIterations;
+    }
+
+    @Override
+    public synchronized double getLastPixelsPerSecond() {
+        return lastComputeNanos == 0 ? 0 : lastPixels / (lastComputeNanos / 1e9);
+    }
+
+    @Override
+    public synchronized double getLastMaxedFraction() {
+        return lastPixels == 0 ? 0 : (double) lastMaxedPixels / lastPixels;
+    }
+
+    @Override
+    public synchronized int getLastThreads() {
+        return lastThreads;
+    }
+
+    @Override
+    public double getComputeMillisP50() {
+        return getComputeMillisPercentile(0.5);
+    }
+
+    @Override
+    public double getComputeMillisP90() {
+        return getComputeMillisPercentile(0.9);
+    }
+
+    @Override
+    public double getComputeMillisP99() {
+        return getComputeMillisPercentile(0.99);
+    }
+
+    @Override
+    public synchronized long[] getComputeHistogram() {
+        long[] histogram = new long[histogramBuckets];
+        for (int index = 0; index < windowCount; index++) {
+            long millis = window[index] / 1_000_000;
+            int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis); // 1 ms is in bucket 1, 2 to 3 ms in bucket 2, ...
+            histogram[Math.min(bucket, histogramBuckets - 1)]++;
+        }
+        return histogram;
+    }
+
+    @Override
+    public synchronized void reset() {
+        windowCount = 0;
+        windowNext = 0;
+        renderCount = 0;
+        lastKind = "none";
+        lastComputeNanos = lastColorizeNanos = lastIterations = 0;
+        lastPixels = lastMaxedPixels = lastThreads = 0;
+    }
+
+    /**
+     * This gets a percentile of the wall times of the recent renders, using the nearest rank.
+     * @param fraction The percentile as a fraction, from 0 to 1.
+     * @return The wall time in milliseconds, 0 if nothing is recorded.
+     */
+    public synchronized double getComputeMillisPercentile(double fraction) {
+        if (windowCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(window, windowCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(fraction * windowCount) - 1;
+        return sorted[Math.max(0, Math.min(rank, windowCount - 1))] / 1e6;
+    }
+}
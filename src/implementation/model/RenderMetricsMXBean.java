@@ -0,0 +1,72 @@
+package model;
+
+/**
+ * This interface is the JMX view of 'RenderMetrics', e.g. in JConsole or VisualVM under model:type=RenderMetrics.
+ * Times are in milliseconds and refer to the last render unless stated otherwise.
+ */
+public interface RenderMetricsMXBean {
+    /**
+     * @return The number of complete renders since the start or the last reset.
+     */
+    long getRenderCount();
+
+    /**
+     * @return How the last render was produced: full, pan, resume or cache.
+     */
+    String getLastKind();
+
+    /**
+     * @return The wall time of the last render.
+     */
+    double getLastComputeMillis();
+
+    /**
+     * @return The wall time of the last coloring of a complete graph.
+     */
+    double getLastColorizeMillis();
+
+    /**
+     * @return The sum of the iteration counts of the last graph, the iterations needed to calculate it from scratch.
+     */
+    long getLastIterations();
+
+    /**
+     * @return The pixels of the last graph divided by its wall time.
+     */
+    double getLastPixelsPerSecond();
+
+    /**
+     * @return The fraction of the pixels of the last graph which reached max. iterations.
+     */
+    double getLastMaxedFraction();
+
+    /**
+     * @return The number of threads which calculated the last graph.
+     */
+    int getLastThreads();
+
+    /**
+     * @return The median wall time of the recent renders.
+     */
+    double getComputeMillisP50();
+
+    /**
+     * @return The 90th percentile of the wall time of the recent renders.
+     */
+    double getComputeMillisP90();
+
+    /**
+     * @return The 99th percentile of the wall time of the recent renders.
+     */
+    double getComputeMillisP99();
+
+    /**
+     * @return The number of recent renders per wall time bucket: below 1 ms, below 2 ms, below 4 ms, ..., and the rest.
+     */
+    long[] getComputeHistogram();
+
+    /**
+     * This forgets every render recorded so far.
+     */
+    void reset();
+}
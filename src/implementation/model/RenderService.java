@@ -0,0 +1,103 @@
+package model;
+
+import javafx.application.Platform;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.TextField;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static model.Model.*;
+
+/**
+ * This class renders the graph of the GUI in the background, using the 'RenderSession' of the model, which holds the graph being rendered
+ * and reuses what it can: cached views, the iteration state of the same view and the previous graph after a pan.
+ * Every pass is colored and shown on the canvas as soon as it is done, and starting a new render cancels the one in progress.
+ * The session renders the view of the model rather than its own, as undo/ redo is kept by the model.
+ * With automatic max. iterations, the chosen value is written back to the view of the model before the first pass is shown.
+ */
+public class RenderService extends Service<Void> {
+    private final Canvas canvas;
+    private final RadioButton showZoom;
+    private final TextField maxIterationsField;
+
+    /**
+     * This creates a render service drawing to the given canvas.
+     * @param canvas The canvas to be drawn.
+     * @param showZoom The button indicating show magnification function is enabled or not.
+     * @param maxIterationsField The text field showing max. iterations, updated with automatically chosen values.
+     */
+    public RenderService(Canvas canvas, RadioButton showZoom, TextField maxIterationsField) {
+        this.canvas = canvas;
+        this.showZoom = showZoom;
+        this.maxIterationsField = maxIterationsField;
+    }
+
+    /**
+     * This sets whether the final value of Z of every pixel is kept, see 'RenderSession.setKeepIterationState'.
+     * @param isKept The flag indicating the state is kept or not.
+     */
+    public void setKeepIterationState(boolean isKept) {
+        session.setKeepIterationState(isKept);
+    }
+
+    /**
+     * This starts rendering the graph using current parameters,
+     * cancelling any render in progress. It must be called on the JavaFX thread.
+     * If the view was moved by whole pixels from the last complete render, that render is moved.
+     */
+    public void render() {
+        restart();
+    }
+
+    @Override
+    protected Task<Void> createTask() {
+        // the parameters are copied here as this runs on the JavaFX thread, while they may change during the render
+        final Viewport requested = currentViewport;
+        final boolean isAuto = isAutoIterations;
+        final int samplesPerAxis = Model.samplesPerAxis;
+
+        return new Task<>() {
+            @Override
+            protected Void call() {
+                session.render(requested, samplesPerAxis, isAuto, (graph, samples, view) -> publish(this, requested, graph, samples, view),
+                        this::isCancelled);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * This shows a pass of the session on the canvas and waits until it is colored, so the session can continue in its graph.
+     * @param task The task rendering the pass.
+     * @param requested The view the task was started with.
+     * @param graph The graph of the session.
+     * @param samples The samples of the session.
+     * @param view The view rendered, with the max. iterations chosen for it.
+     */
+    private void publish(Task<Void> task, Viewport requested, int[] graph, Supersampler samples, Viewport view) {
+        FutureTask<Void> update = new FutureTask<>(() -> {
+            if (!task.isCancelled()) { // a newer render may have started in the meantime
+                if (!view.equals(requested) && currentViewport.equals(requested)) { // the max. iterations were chosen, and the user changed nothing meanwhile
+                    currentViewport = view;
+                    maxIterationsField.setPromptText(String.valueOf(view.getMaxIterations()));
+                }
+                colorize(graph, samples, view.getMaxIterations());
+                draw(canvas);
+                setShowZoom(canvas, showZoom); // need to draw again as it is overwritten
+            }
+            return null;
+        });
+        Platform.runLater(update);
+        try {
+            update.get();
+        } catch (InterruptedException e) { // cancelled, which the session checks before the next tile
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package model;
+
+import javafx.scene.paint.Color;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class is an independent render of the mandelbrot set: it owns its view, color, undo/ redo history,
+ * graph buffer, samples and calculator, and shares no mutable state with other sessions apart from an
+ * optional viewport cache and render metrics, which are thread-safe. Several sessions (e.g. split views, a navigator thumbnail
+ * or background jobs) can therefore render at the same time.
+ * The view and history are guarded by the session itself and the graph by its own lock, so the view
+ * can be changed from one thread while another renders; the render uses the view it started with.
+ * A render reuses what it can: a cached graph is copied, the same view with different max. iterations is continued
+ * from the kept iteration state, and a view moved by whole pixels only calculates the uncovered strips,
+ * giving exactly the same graph as calculating it from scratch.
+ * Otherwise the graph is calculated from a coarse preview to the full resolution, and a listener can show every pass.
+ */
+public class RenderSession {
+    public static final int previewStep = 8; // the first pass iterates one pixel in every 8 x 8 block
+    private static final int historySize = 100; // older undo entries are dropped
+    public static final int defaultSupersamplingThreshold = 1; // neighbours differing by more iterations are supersampled
+
+    /**
+     * This receives the graph of a render in progress, e.g. to show each pass of it.
+     */
+    public interface PassListener {
+        /**
+         * This is called after each pass of a render, once the graph is complete and once it is supersampled.
+         * The render waits for the call, and continues in the same graph and samples afterwards, so they must be copied here.
+         * @param graph The graph, holding a coarse preview until it is complete.
+         * @param supersampler The samples of the pixels on edges, empty until the complete graph is supersampled.
+         * @param view The view being rendered, with the max. iterations chosen for it.
+         */
+        void publish(int[] graph, Supersampler supersampler, Viewport view);
+    }
+
+    /**
+     * This fills the graph of a session from elsewhere, e.g. a saved session.
+     */
+    public interface GraphReader {
+        /**
+         * This writes the iteration counts straight into the graph, validating them as it goes.
+         * @param graph The graph, xResolution * yResolution long, row-major.
+         * @return The view of the counts written.
+         * @throws Exception If the counts cannot be read or are invalid, in which case the graph is left incomplete.
+         */
+        Viewport read(int[] graph) throws Exception;
+    }
+
+    /**
+     * This stores what undo/ redo restores.
+     */
+    private static final class Entry {
+        final Viewport viewport;
+        final Color color;
+
+        Entry(Viewport viewport, Color color) {
+            this.viewport = viewport;
+            this.color = color;
+        }
+    }
+
+    private final int xResolution;
+    private final int yResolution;
+    private final MandelbrotCalculator mandelCalc;
+    private final ViewportCache viewportCache; // null if complete renders are not cached
+    private final RenderMetrics renderMetrics; // null if renders are not recorded
+    private final int supersamplingThreshold;
+
+    // the view, guarded by 'this'
+    private Viewport viewport = Viewport.initial();
+    private Color color = ColorSet.greyScale;
+    private int samplesPerAxis = 1;
+    private final Deque<Entry> undoHistory = new ArrayDeque<>();
+    private final Deque<Entry> redoHistory = new ArrayDeque<>();
+
+    // the render, guarded by 'graph'
+    private final int[] graph;
+    private Viewport graphViewport = null; // the view held by the graph, null if it is incomplete
+    private final Supersampler supersampler = new Supersampler();
+    private IterationState iterationState = null; // null if not kept
+
+    /**
+     * This creates a session showing the whole set, with its own calculator using all processors and no cache.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     */
+    public RenderSession(int xResolution, int yResolution) {
+        this(xResolution, yResolution, new MandelbrotCalculator(), null);
+    }
+
+    /**
+     * This creates a session showing the whole set, which records no metrics.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param mandelCalc The calculator, which may be shared as it keeps no state of a render.
+     * @param viewportCache The cache of complete renders, which may be shared; null for none.
+     */
+    public RenderSession(int xResolution, int yResolution, MandelbrotCalculator mandelCalc, ViewportCache viewportCache) {
+        this(xResolution, yResolution, mandelCalc, viewportCache, null);
+    }
+
+    /**
+     * This creates a session showing the whole set, supersampling neighbours differing by more than 'defaultSupersamplingThreshold'.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param mandelCalc The calculator, which may be shared as it keeps no state of a render.
+     * @param viewportCache The cache of complete renders, which may be shared; null for none.
+     * @param renderMetrics The metrics every calculated graph is recorded in, which may be shared; null for none.
+     */
+    public RenderSession(int xResolution, int yResolution, MandelbrotCalculator mandelCalc, ViewportCache viewportCache, RenderMetrics renderMetrics) {
+        this(xResolution, yResolution, mandelCalc, viewportCache, renderMetrics, defaultSupersamplingThreshold);
+    }
+
+    /**
+     * This creates a session showing the whole set.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param mandelCalc The calculator, which may be shared as it keeps no state of a render.
+     * @param viewportCache The cache of complete renders, which may be shared; null for none.
+     * @param renderMetrics The metrics every calculated graph is recorded in, which may be shared; null for none.
+     * @param supersamplingThreshold The anti-aliasing supersamples pixels whose neighbours differ by more iterations.
+     */
+    public RenderSession(int xResolution, int yResolution, MandelbrotCalculator mandelCalc, ViewportCache viewportCache, RenderMetrics renderMetrics,
+                         int supersamplingThreshold) {
+        if (xResolution < 1 || yResolution < 1) {
+            throw new IllegalArgumentException("Resolution must be positive: " + xResolution + "x" + yResolution);
+        }
+        if (supersamplingThreshold < 0) {
+            throw new IllegalArgumentException("Supersampling threshold must not be negative: " + supersamplingThreshold);
+        }
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.mandelCalc = mandelCalc;
+        this.viewportCache = viewportCache;
+        this.renderMetrics = renderMetrics;
+        this.supersamplingThreshold = supersamplingThreshold;
+        graph = new int[xResolution * yResolution];
+    }
+
+    /**
+     * @return The number of pixels on the x-axis.
+     */
+    public int getXResolution() {
+        return xResolution;
+    }
+
+    /**
+     * @return The number of pixels on the y-axis.
+     */
+    public int getYResolution() {
+        return yResolution;
+    }
+
+    /**
+     * @return The current view.
+     */
+    public synchronized Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * @return The current color.
+     */
+    public synchronized Color getColor() {
+        return color;
+    }
+
+    /**
+     * This changes the view, recording the old one for undo.
+     * @param viewport The new view.
+     */
+    public synchronized void setViewport(Viewport viewport) {
+        change(viewport, color);
+    }
+
+    /**
+     * This moves the view by whole pixels, recording the old one for undo.
+     * @param xShift The number of pixels the view moves along the x-axis.
+     * @param yShift The number of pixels the view moves along the y-axis.
+     */
+    public synchronized void pan(int xShift, int yShift) {
+        change(viewport.pan(xShift, yShift, xResolution, yResolution), color);
+    }
+
+    /**
+     * This zooms into a square selected in pixels, recording the old view for undo.
+     * @param x The left side of the square in pixels.
+     * @param y The top side of the square in pixels.
+     * @param length The length of the square in pixels.
+     */
+    public synchronized void zoom(double x, double y, double length) {
+        change(viewport.zoom(x, y, length, xResolution, yResolution), color);
+    }
+
+    /**
+     * This changes the max. iterations, recording the old value for undo.
+     * @param maxIterations The max. iterations.
+     */
+    public synchronized void setMaxIterations(int maxIterations) {
+        change(viewport.withMaxIterations(maxIterations), color);
+    }
+
+    /**
+     * This changes the color, recording the old one for undo. The graph needs no new render.
+     * @param color The color.
+     */
+    public synchronized void setColor(Color color) {
+        change(viewport, color);
+    }
+
+    /**
+     * This sets the anti-aliasing of the next renders.
+     * @param samplesPerAxis The number of samples along each axis of pixels on edges, 1 for none.
+     */
+    public synchronized void setSamplesPerAxis(int samplesPerAxis) {
+        if (samplesPerAxis < 1 || samplesPerAxis > Supersampler.maxSamplesPerAxis) {
+            throw new IllegalArgumentException("Samples per axis must be from 1 to " + Supersampler.maxSamplesPerAxis + ": " + samplesPerAxis);
+        }
+        this.samplesPerAxis = samplesPerAxis;
+    }
+
+    /**
+     * This restores the view and color before the last change.
+     * @return false if there is nothing to undo.
+     */
+    public synchronized boolean undo() {
+        return restore(undoHistory, redoHistory);
+    }
+
+    /**
+     * This restores the view and color of the last undone change.
+     * @return false if there is nothing to redo.
+     */
+    public synchronized boolean redo() {
+        return restore(redoHistory, undoHistory);
+    }
+
+    /**
+     * This sets whether the final value of Z of every pixel is kept, so a render with
+     * different max. iterations of the same view only continues unfinished pixels.
+     * This needs about 20 bytes per pixel.
+     * @param isKept The flag indicating the state is kept or not.
+     */
+    public void setKeepIterationState(boolean isKept) {
+        synchronized (graph) {
+            if (!isKept) {
+                iterationState = null;
+            } else if (iterationState == null) {
+                iterationState = new IterationState(graph.length);
+            }
+        }
+    }
+
+    /**
+     * This renders the current view into the graph of the session, unless the graph already holds it.
+     * @param cancelled Checked before each tile; once it returns true the render stops and the graph is incomplete.
+     * @return true if the graph is complete.
+     */
+    public boolean render(BooleanSupplier cancelled) {
+        Viewport view;
+        int samplesPerAxis;
+        synchronized (this) {
+            view = viewport;
+            samplesPerAxis = this.samplesPerAxis;
+        }
+        return render(view, samplesPerAxis, false, null, cancelled);
+    }
+
+    /**
+     * This renders the given view into the graph of the session, unless the graph already holds it,
+     * leaving the view and history of the session unchanged, e.g. for a caller keeping its own.
+     * If the graph is calculated, every coarse pass is passed to the listener, and so is the graph once it is complete
+     * and again once it is supersampled.
+     * @param view The view.
+     * @param samplesPerAxis The anti-aliasing, the number of samples along each axis of pixels on edges, 1 for none.
+     * @param isAuto The flag indicating the max. iterations of the view are chosen by 'IterationTuner'; a pan keeps those of the graph.
+     * @param listener The listener receiving the passes, or null for none.
+     * @param cancelled Checked before each tile; once it returns true the render stops and the graph is incomplete.
+     * @return true if the graph is complete.
+     */
+    public boolean render(Viewport view, int samplesPerAxis, boolean isAuto, PassListener listener, BooleanSupplier cancelled) {
+        if (samplesPerAxis < 1 || samplesPerAxis > Supersampler.maxSamplesPerAxis) {
+            throw new IllegalArgumentException("Samples per axis must be from 1 to " + Supersampler.maxSamplesPerAxis + ": " + samplesPerAxis);
+        }
+        synchronized (graph) { // a cancelled render may still be finishing its last tiles
+            long start = System.nanoTime(); // after waiting for the lock, so only this render is measured
+            if (isAuto) {
+                view = tune(view, cancelled);
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+            }
+            if (!view.equals(graphViewport)) {
+                supersampler.clear(); // the passes are shown without samples
+                String kind = calculate(view, listener, cancelled);
+                if (kind == null) {
+                    graphViewport = null;
+                    return false;
+                }
+                graphViewport = view;
+                if (renderMetrics != null) {
+                    renderMetrics.recordRender(kind, System.nanoTime() - start, graph, graph.length, view.getMaxIterations(), mandelCalc.getParallelism());
+                }
+            }
+            if (listener != null) {
+                listener.publish(graph, supersampler, view);
+            }
+            if (supersampler.getSamplesPerAxis() != samplesPerAxis) {
+                supersampler.supersample(mandelCalc, graph, xResolution, yResolution, view, supersamplingThreshold, samplesPerAxis, cancelled);
+                if (cancelled.getAsBoolean()) {
+                    supersampler.clear(); // the graph itself is complete
+                    return false;
+                }
+                if (listener != null) {
+                    listener.publish(graph, supersampler, view);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * This replaces the graph with one read elsewhere, e.g. from a saved session, leaving the view and history of the session unchanged.
+     * The reader writes straight into the graph, so if it fails the graph is incomplete and the next render calculates it again.
+     * @param reader The reader filling the graph.
+     * @return The view of the graph read.
+     * @throws Exception If the reader fails.
+     */
+    public Viewport load(GraphReader reader) throws Exception {
+        synchronized (graph) { // a cancelled render may still be finishing its last tiles
+            graphViewport = null;
+            supersampler.clear(); // the samples belong to the replaced graph
+            if (iterationState != null) {
+                iterationState.invalidate(); // the state does not come with the graph read
+            }
+            graphViewport = reader.read(graph);
+            return graphViewport;
+        }
+    }
+
+    /**
+     * This colors the graph with the current color, including the samples of the pixels on edges.
+     * @param frame The buffer receiving the colors (ARGB), at least xResolution * yResolution long.
+     * @return false if the graph is incomplete, in which case the frame is not changed.
+     */
+    public boolean colorize(int[] frame) {
+        Color tone = getColor();
+        synchronized (graph) {
+            if (graphViewport == null) {
+                return false;
+            }
+            int[] palette = ColorSet.getPalette(tone, graphViewport.getMaxIterations());
+            for (int index = 0; index < graph.length; index++) {
+                frame[index] = palette[graph[index]];
+            }
+            supersampler.colorize(frame, palette, graph.length);
+            return true;
+        }
+    }
+
+    /**
+     * This copies the iteration counts of the graph.
+     * @param target The buffer receiving the counts, at least xResolution * yResolution long.
+     * @return The view of the copied graph, or null if it is incomplete, in which case nothing is copied.
+     */
+    public Viewport copyGraph(int[] target) {
+        synchronized (graph) {
+            if (graphViewport != null) {
+                System.arraycopy(graph, 0, target, 0, graph.length);
+            }
+            return graphViewport;
+        }
+    }
+
+    /**
+     * This copies the samples of the pixels on edges of the graph.
+     * @param target The supersampler receiving the samples.
+     */
+    public void copySamples(Supersampler target) {
+        synchronized (graph) {
+            target.copyFrom(supersampler);
+        }
+    }
+
+    /**
+     * This chooses the max. iterations of a view. A view moved by whole pixels from the graph keeps its max. iterations,
+     * so the graph can be moved.
+     * @param view The view; its max. iterations are ignored.
+     * @param cancelled Checked during the probes.
+     * @return The view with the chosen max. iterations.
+     */
+    private Viewport tune(Viewport view, BooleanSupplier cancelled) {
+        if (graphViewport != null) {
+            Viewport kept = view.withMaxIterations(graphViewport.getMaxIterations());
+            int[] shift = getPan(kept);
+            if (shift != null && (shift[0] != 0 || shift[1] != 0)) {
+                return kept;
+            }
+        }
+        return view.withMaxIterations(IterationTuner.tune(mandelCalc, view, cancelled));
+    }
+
+    /**
+     * This calculates a view into the graph, reusing what the graph or the cache already hold.
+     * @param view The view to be calculated.
+     * @param listener The listener receiving the coarse passes, or null for none.
+     * @param cancelled Checked before each tile.
+     * @return How the graph was calculated, as recorded in the render metrics, or null if the calculation was cancelled.
+     */
+    private String calculate(Viewport view, PassListener listener, BooleanSupplier cancelled) {
+        BigDecimal minReal = view.getMinReal();
+        BigDecimal maxReal = view.getMaxReal();
+        BigDecimal minImaginary = view.getMinImaginary();
+        BigDecimal maxImaginary = view.getMaxImaginary();
+        int maxIterations = view.getMaxIterations();
+        double radiusSquared = view.getRadiusSquared();
+        String key = ViewportCache.getKey(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+        if (viewportCache != null && viewportCache.get(key, graph, maxIterations)) { // e.g. undo/ redo
+            if (iterationState != null) {
+                iterationState.invalidate(); // the state does not come with the cached graph
+            }
+            return "cache";
+        }
+
+        String kind;
+        MandelbrotCalculator.Precision precision = view.getPrecision(xResolution, yResolution);
+        IterationState state = precision == MandelbrotCalculator.Precision.DOUBLE ? iterationState : null; // the state only holds double orbits
+        PixelGrid grid = state != null ? PixelGrid.anchored(xResolution, yResolution, view) : null;
+        // the reference orbit of perturbation is at the centre of the view, so a moved view has other values for the same pixels
+        int[] shift = precision != MandelbrotCalculator.Precision.PERTURBATION ? getPan(view) : null;
+        if (state != null && state.matches(grid, radiusSquared)) { // same view with different max. iterations
+            kind = "resume";
+            mandelCalc.resumeMandelbrotSet(graph, state, maxIterations, cancelled);
+        } else if (shift != null) {
+            kind = "pan";
+            if (iterationState != null) {
+                iterationState.invalidate(); // the state is not moved with the graph
+            }
+            mandelCalc.panMandelbrotSet(graph, xResolution, yResolution, shift[0], shift[1], view, cancelled);
+        } else {
+            kind = "full";
+            if (iterationState != null) {
+                iterationState.invalidate();
+            }
+            IntBinaryOperator pixel = state != null
+                    ? mandelCalc.getPixelFunction(state, grid, maxIterations, radiusSquared)
+                    : mandelCalc.getPixelFunction(xResolution, yResolution, view);
+            int previousStep = 0;
+            for (int step = listener == null ? 1 : previewStep; step >= 1; step /= 2) { // the passes are only worth it if they are shown
+                mandelCalc.calcMandelbrotPass(graph, xResolution, yResolution, step, previousStep, pixel, cancelled);
+                if (cancelled.getAsBoolean()) {
+                    return null;
+                }
+                if (listener != null && step > 1) { // the complete graph is passed on by 'render'
+                    listener.publish(graph, supersampler, view);
+                }
+                previousStep = step;
+            }
+            if (state != null) {
+                state.setView(grid, radiusSquared);
+            }
+        }
+        if (cancelled.getAsBoolean()) {
+            return null;
+        }
+        if (viewportCache != null) {
+            viewportCache.put(key, graph, graph.length, maxIterations);
+        }
+        return kind;
+    }
+
+    /**
+     * This finds the whole pixels a view moved from the graph.
+     * @param view The view.
+     * @return The shift along the x-axis and the y-axis, or null if the graph is incomplete or the view is not moved from it.
+     */
+    private int[] getPan(Viewport view) {
+        if (graphViewport == null) {
+            return null;
+        }
+        int xShift = getShift(graphViewport.getMinReal(), graphViewport.getMaxReal(), view.getMinReal(), xResolution);
+        int yShift = getShift(graphViewport.getMinImaginary(), graphViewport.getMaxImaginary(), view.getMinImaginary(), yResolution);
+        return view.equals(graphViewport.pan(xShift, yShift, xResolution, yResolution)) ? new int[]{xShift, yShift} : null;
+    }
+
+    /**
+     * This finds the number of whole pixels a view moved along an axis, which is only a candidate
+     * to be checked with 'Viewport.pan', as a view of another size or off the pixel grid can give one as well.
+     * @param oldMin The lower bound of the old view along the axis.
+     * @param oldMax The upper bound of the old view along the axis.
+     * @param newMin The lower bound of the new view along the axis.
+     * @param resolution The number of pixels along the axis.
+     * @return The number of pixels, 0 if the views are further apart than the resolution.
+     */
+    private static int getShift(BigDecimal oldMin, BigDecimal oldMax, BigDecimal newMin, int resolution) {
+        BigDecimal pixels = newMin.subtract(oldMin).multiply(BigDecimal.valueOf(resolution)).divide(oldMax.subtract(oldMin), MathContext.DECIMAL64);
+        return pixels.abs().compareTo(BigDecimal.valueOf(resolution)) < 0 ? pixels.setScale(0, RoundingMode.HALF_EVEN).intValue() : 0;
+    }
+
+    /**
+     * This changes the view and color, recording the old ones for undo and dropping the redo history.
+     * @param viewport The new view.
+     * @param color The new color.
+     */
+    private void change(Viewport viewport, Color color) {
+        if (viewport.equals(this.viewport) && color.equals(this.color)) {
+            return;
+        }
+        undoHistory.push(new Entry(this.viewport, this.color));
+        if (undoHistory.size() > historySize) {
+            undoHistory.removeLast();
+        }
+        redoHistory.clear();
+        this.viewport = viewport;
+        this.color = color;
+    }
+
+    /**
+     * This restores the view and color from one history, recording the current ones in the other.
+     * @param from The history to restore from.
+     * @param to The history receiving the current view and color.
+     * @return false if there is nothing to restore.
+     */
+    private boolean restore(Deque<Entry> from, Deque<Entry> to) {
+        Entry entry = from.poll();
+        if (entry == null) {
+            return false;
+        }
+        to.push(new Entry(viewport, color));
+        viewport = entry.viewport;
+        color = entry.color;
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+package model;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class fills a rectangle of the graph using Mariani-Silver subdivision.
+ * The border of the rectangle must already be computed. If every border pixel has the same value,
+ * the inside is filled with it, otherwise the rectangle is cut into four by a computed cross
+ * and each quarter is handled in parallel the same way.
+ * The result of each task is the number of pixels it actually iterated.
+ */
+class SubdivisionTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L; // tasks are never serialized, but ForkJoinTask is Serializable
+    static final int MIN_SIZE = 8; // rectangles with a thinner inside are computed pixel by pixel
+
+    private final IntBinaryOperator pixel;
+    private final int[] data;
+    private final int width;
+    private final int xStart;
+    private final int yStart;
+    private final int xEnd;
+    private final int yEnd;
+
+    /**
+     * This creates a task for the rectangle whose border runs along the given rows and columns.
+     * @param pixel The function computing the value of pixel (x, y).
+     * @param data The row-major graph holding the border and receiving the inside.
+     * @param width The number of pixels in each row of the graph.
+     * @param xStart The left border column.
+     * @param yStart The top border row.
+     * @param xEnd The right border column (inclusive).
+     * @param yEnd The bottom border row (inclusive).
+     */
+    SubdivisionTask(IntBinaryOperator pixel, int[] data, int width, int xStart, int yStart, int xEnd, int yEnd) {
+        this.pixel = pixel;
+        this.data = data;
+        this.width = width;
+        this.xStart = xStart;
+        this.yStart = yStart;
+        this.xEnd = xEnd;
+        this.yEnd = yEnd;
+    }
+
+    /**
+     * This computes the border of the given rectangle.
+     * It is used once for the whole graph before the first task is started.
+     * @param pixel The function computing the value of pixel (x, y).
+     * @param data The row-major graph receiving the border.
+     * @param width The number of pixels in each row of the graph.
+     * @param xStart The left border column.
+     * @param yStart The top border row.
+     * @param xEnd The right border column (inclusive).
+     * @param yEnd The bottom border row (inclusive).
+     * @return The number of pixels iterated.
+     */
+    static long computeBorder(IntBinaryOperator pixel, int[] data, int width, int xStart, int yStart, int xEnd, int yEnd) {
+        long count = 0;
+        for (int x = xStart; x <= xEnd; x++) {
+            data[yStart * width + x] = pixel.applyAsInt(x, yStart);
+            count++;
+            if (yEnd != yStart) {
+                data[yEnd * width + x] = pixel.applyAsInt(x, yEnd);
+                count++;
+            }
+        }
+        for (int y = yStart + 1; y < yEnd; y++) {
+            data[y * width + xStart] = pixel.applyAsInt(xStart, y);
+            count++;
+            if (xEnd != xStart) {
+                data[y * width + xEnd] = pixel.applyAsInt(xEnd, y);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected Long compute() {
+        if (xEnd - xStart < 2 || yEnd - yStart < 2) {
+            return 0L; // no inside left
+        }
+        if (isUniformBorder()) {
+            int value = data[yStart * width + xStart];
+            for (int y = yStart + 1; y < yEnd; y++) {
+                int row = y * width;
+                for (int x = xStart + 1; x < xEnd; x++) {
+                    data[row + x] = value;
+                }
+            }
+            return 0L;
+        }
+
+        long count = 0;
+        if (xEnd - xStart <= MIN_SIZE || yEnd - yStart <= MIN_SIZE) {
+            for (int y = yStart + 1; y < yEnd; y++) {
+                int row = y * width;
+                for (int x = xStart + 1; x < xEnd; x++) {
+                    data[row + x] = pixel.applyAsInt(x, y);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int xMid = (xStart + xEnd) / 2;
+        int yMid = (yStart + yEnd) / 2;
+        for (int y = yStart + 1; y < yEnd; y++) { // the cross becomes the inner borders of the quarters
+            data[y * width + xMid] = pixel.applyAsInt(xMid, y);
+            count++;
+        }
+        for (int x = xStart + 1; x < xEnd; x++) {
+            if (x != xMid) {
+                data[yMid * width + x] = pixel.applyAsInt(x, yMid);
+                count++;
+            }
+        }
+
+        SubdivisionTask topLeft = new SubdivisionTask(pixel, data, width, xStart, yStart, xMid, yMid);
+        SubdivisionTask topRight = new SubdivisionTask(pixel, data, width, xMid, yStart, xEnd, yMid);
+        SubdivisionTask bottomLeft = new SubdivisionTask(pixel, data, width, xStart, yMid, xMid, yEnd);
+        SubdivisionTask bottomRight = new SubdivisionTask(pixel, data, width, xMid, yMid, xEnd, yEnd);
+        invokeAll(topLeft, topRight, bottomLeft, bottomRight);
+        return count + topLeft.join() + topRight.join() + bottomLeft.join() + bottomRight.join();
+    }
+
+    /**
+     * This checks if every pixel on the border of the rectangle has the same value.
+     * @return true if the border is a single value.
+     */
+    private boolean isUniformBorder() {
+        int value = data[yStart * width + xStart];
+        for (int x = xStart; x <= xEnd; x++) {
+            if (data[yStart * width + x] != value || data[yEnd * width + x] != value) {
+                return false;
+            }
+        }
+        for (int y = yStart + 1; y < yEnd; y++) {
+            if (data[y * width + xStart] != value || data[y * width + xEnd] != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * This class anti-aliases a rendered graph by supersampling only the pixels on steep edges.
+ * A pixel is supersampled if its value differs from a horizontal or vertical neighbour by more than a threshold.
+ * The samples of each such pixel lie on an n x n grid centred on the pixel's own sample point, and are stored
+ * as iteration counts, so the averaged color follows any later change of the palette.
+ */
+public class Supersampler {
+    public static final int maxSamplesPerAxis = 4; // 16 samples per pixel
+
+    private int samplesPerAxis = 1;
+    private int count = 0;              // the number of supersampled pixels
+    private int[] pixels = new int[0];  // their indexes in the graph, ascending
+    private int[] samples = new int[0]; // samplesPerAxis^2 iteration counts for each of them
+    private boolean[] isEdge = new boolean[0]; // whether each pixel of the graph is supersampled
+    private int size = 0;               // the number of pixels in the graph
+    private int maxIterations = 0;      // the max. iterations of the samples, which index the palette
+
+    /**
+     * This finds the pixels on steep edges of a complete graph and calculates their samples, replacing any previous ones.
+     * @param mandelCalc The calculator used for the samples.
+     * @param graph The complete graph, row-major.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param view The view of the graph.
+     * @param threshold The largest difference between neighbouring pixels which is not supersampled.
+     * @param samplesPerAxis The number of samples along each axis of a pixel, from 1 (off) to 'maxSamplesPerAxis'.
+     * @param cancelled Checked before each tile; once it returns true the samples are incomplete and should be cleared.
+     * @return The number of samples calculated.
+     */
+    public long supersample(MandelbrotCalculator mandelCalc, int[] graph, int xResolution, int yResolution,
+                            Viewport view, int threshold, int samplesPerAxis, BooleanSupplier cancelled) {
+        if (samplesPerAxis < 1 || samplesPerAxis > maxSamplesPerAxis) {
+            throw new IllegalArgumentException("Samples per axis must be from 1 to " + maxSamplesPerAxis + ": " + samplesPerAxis);
+        }
+        this.samplesPerAxis = samplesPerAxis;
+        maxIterations = view.getMaxIterations();
+        size = xResolution * yResolution;
+        count = 0;
+        if (samplesPerAxis == 1) {
+            return 0;
+        }
+
+        if (isEdge.length < size) {
+            isEdge = new boolean[size];
+        } else {
+            Arrays.fill(isEdge, 0, size, false);
+        }
+        for (int y = 0; y < yResolution; y++) {
+            int row = y * xResolution;
+            for (int x = 0; x < xResolution; x++) {
+                int index = row + x;
+                if (x + 1 < xResolution && Math.abs(graph[index] - graph[index + 1]) > threshold) {
+                    isEdge[index] = isEdge[index + 1] = true; // both sides of the edge are blurred
+                }
+                if (y + 1 < yResolution && Math.abs(graph[index] - graph[index + xResolution]) > threshold) {
+                    isEdge[index] = isEdge[index + xResolution] = true;
+                }
+            }
+        }
+        for (boolean edge : isEdge) {
+            count += edge ? 1 : 0;
+        }
+        if (pixels.length < count) {
+            pixels = new int[count];
+        }
+        for (int index = 0, position = 0; index < size; index++) {
+            if (isEdge[index]) {
+                pixels[position++] = index;
+            }
+        }
+        int samplesPerPixel = samplesPerAxis * samplesPerAxis;
+        if (samples.length < count * samplesPerPixel) {
+            samples = new int[count * samplesPerPixel];
+        }
+
+        // the samples are the pixels of a finer graph, shifted so the pixel's own sample point is in the middle of its samples
+        BigDecimal width = view.getMaxReal().subtract(view.getMinReal());
+        BigDecimal height = view.getMaxImaginary().subtract(view.getMinImaginary());
+        BigDecimal shift = BigDecimal.valueOf(samplesPerAxis - 1).divide(BigDecimal.valueOf(2L * samplesPerAxis), MathContext.DECIMAL128);
+        BigDecimal fineMinReal = view.getMinReal().subtract(width.multiply(shift).divide(BigDecimal.valueOf(xResolution), MathContext.DECIMAL128));
+        BigDecimal fineMinImaginary = view.getMinImaginary().subtract(height.multiply(shift).divide(BigDecimal.valueOf(yResolution), MathContext.DECIMAL128));
+        IntBinaryOperator fine = mandelCalc.getPixelFunction(xResolution * samplesPerAxis, yResolution * samplesPerAxis,
+                new Viewport(fineMinReal, fineMinReal.add(width), fineMinImaginary, fineMinImaginary.add(height), maxIterations, view.getRadiusSquared()));
+        mandelCalc.calcMandelbrotSamples(samples, pixels, count, xResolution, samplesPerAxis, fine, cancelled);
+        return (long) count * samplesPerPixel;
+    }
+
+    /**
+     * This replaces the colors of the supersampled pixels by the average color of their samples.
+     * @param frame The colored graph (ARGB), row-major.
+     * @param palette The colors indexed by iteration count, one for each count up to the max. iterations of the samples.
+     * @param end The index of the first pixel not to be changed.
+     */
+    public void colorize(int[] frame, int[] palette, int end) {
+        if (count > 0 && palette.length != maxIterations + 1) { // e.g. samples left over from a graph which was replaced
+            throw new IllegalArgumentException("The palette has " + palette.length + " colors, the samples need " + (maxIterations + 1));
+        }
+        int samplesPerPixel = samplesPerAxis * samplesPerAxis;
+        for (int position = 0; position < count && pixels[position] < end; position++) {
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int sample = position * samplesPerPixel; sample < (position + 1) * samplesPerPixel; sample++) {
+                int argb = palette[samples[sample]];
+                red += (argb >> 16) & 0xff;
+                green += (argb >> 8) & 0xff;
+                blue += argb & 0xff;
+            }
+            frame[pixels[position]] = 0xff000000 | (red / samplesPerPixel) << 16 | (green / samplesPerPixel) << 8 | blue / samplesPerPixel;
+        }
+    }
+
+    /**
+     * This makes this a copy of the given supersampler, reusing its own arrays where possible.
+     * @param other The supersampler to be copied.
+     */
+    public void copyFrom(Supersampler other) {
+        int samplesPerPixel = other.samplesPerAxis * other.samplesPerAxis;
+        if (pixels.length < other.count) {
+            pixels = new int[other.count];
+        }
+        if (samples.length < other.count * samplesPerPixel) {
+            samples = new int[other.count * samplesPerPixel];
+        }
+        System.arraycopy(other.pixels, 0, pixels, 0, other.count);
+        System.arraycopy(other.samples, 0, samples, 0, other.count * samplesPerPixel);
+        samplesPerAxis = other.samplesPerAxis;
+        maxIterations = other.maxIterations;
+        count = other.count;
+        size = other.size;
+    }
+
+    /**
+     * This removes all samples, e.g. when the graph changes, leaving a single sample per pixel.
+     */
+    public void clear() {
+        samplesPerAxis = 1;
+        count = 0;
+    }
+
+    /**
+     * @return The number of supersampled pixels.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The fraction of the pixels of the graph which are supersampled.
+     */
+    public double getFraction() {
+        return size == 0 ? 0 : (double) count / size;
+    }
+
+    /**
+     * @return The number of samples along each axis of a supersampled pixel.
+     */
+    public int getSamplesPerAxis() {
+        return samplesPerAxis;
+    }
+}
@@ -0,0 +1,230 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class stores encoded map tiles on disk, so a tile pyramid survives restarts and is never rendered twice.
+ * Tiles are appended to a pack file, each after a header repeating its address. The index is a memory-mapped
+ * quadtree: the slots of level z follow those of all lower levels, (4^z - 1) / 3 in total, and tile (x, y)
+ * has slot y * 2^z + x within its level. A slot holds the position and length of the tile in the pack, or 0.
+ * The pack is written before the slot, and a slot is only trusted if its tile header matches, so a crash
+ * leaves at most unreachable bytes in the pack. The index is mapped in chunks as they are first used,
+ * so it only takes disk space for the levels which were visited.
+ * Reads need no lock; appends are serialised.
+ */
+public class TileCache implements Closeable {
+    public static final int maxZoomLimit = 16; // 5.7 billion slots, 46 GB of index if every level were visited
+    private static final int slotBytes = 8;
+    private static final int chunkBytes = 1 << 26; // the index is mapped 64 MB at a time
+    private static final int headerBytes = 16; // z, x, y and the length in front of every tile in the pack
+    private static final int lengthBits = 24; // tiles up to 16 MB, packs up to 1 TB
+
+    private final int maxZoom;
+    private final FileChannel pack;
+    private final FileChannel index;
+    private final MappedByteBuffer[] chunks;
+    private long packSize;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * This opens the cache in a directory, creating it if needed.
+     * A description of what the tiles show is kept with the cache, and a cache made for anything else is refused,
+     * as its tiles would not match.
+     * @param directory The directory holding the cache.
+     * @param maxZoom The deepest level of the pyramid, at most 'maxZoomLimit'.
+     * @param description What the tiles show, e.g. the iterations and color.
+     * @throws IOException If the cache cannot be opened or was made for a different description.
+     */
+    public TileCache(File directory, int maxZoom, String description) throws IOException {
+        if (maxZoom < 0 || maxZoom > maxZoomLimit) {
+            throw new IllegalArgumentException("Max. zoom must be from 0 to " + maxZoomLimit + ": " + maxZoom);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File descriptionFile = new File(directory, "pyramid.txt");
+        String expected = description + "\nmaxZoom " + maxZoom + "\n";
+        if (descriptionFile.exists()) {
+            String found = new String(Files.readAllBytes(descriptionFile.toPath()), StandardCharsets.UTF_8);
+            if (!found.equals(expected)) {
+                throw new IOException("The cache in " + directory + " holds other tiles:\n" + found);
+            }
+        } else {
+            Files.write(descriptionFile.toPath(), expected.getBytes(StandardCharsets.UTF_8));
+        }
+
+        this.maxZoom = maxZoom;
+        pack = FileChannel.open(new File(directory, "tiles.pack").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(new File(directory, "tiles.idx").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        packSize = pack.size();
+        long indexBytes = getSlot(maxZoom + 1, 0, 0) * slotBytes;
+        chunks = new MappedByteBuffer[(int) ((indexBytes + chunkBytes - 1) / chunkBytes)];
+    }
+
+    /**
+     * @return The deepest level of the pyramid.
+     */
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * This checks if a tile address is within the pyramid.
+     * @param zoom The level, 0 is a single tile.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return true if the tile exists in the pyramid.
+     */
+    public boolean contains(int zoom, int x, int y) {
+        return zoom >= 0 && zoom <= maxZoom && x >= 0 && y >= 0 && x < 1 << zoom && y < 1 << zoom;
+    }
+
+    /**
+     * This reads a stored tile.
+     * @param zoom The level.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The encoded tile, or null if it is not stored.
+     * @throws IOException If the pack cannot be read.
+     */
+    public byte[] get(int zoom, int x, int y) throws IOException {
+        long slot = getSlot(zoom, x, y);
+        long entry = getChunk(slot).getLong(getPosition(slot));
+        long position = entry >>> lengthBits;
+        int length = (int) (entry & ((1 << lengthBits) - 1));
+        if (entry != 0 && position >= headerBytes && position + length <= pack.size()) {
+            ByteBuffer buffer = ByteBuffer.allocate(headerBytes + length);
+            long start = position - headerBytes;
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0) {
+                read = pack.read(buffer, start + buffer.position()); // positional, so readers do not interfere
+            }
+            buffer.flip();
+            if (buffer.remaining() == headerBytes + length && buffer.getInt() == zoom && buffer.getInt() == x
+                    && buffer.getInt() == y && buffer.getInt() == length) {
+                count(true);
+                byte[] tile = new byte[length];
+                buffer.get(tile);
+                return tile;
+            }
+        }
+        count(false);
+        return null;
+    }
+
+    /**
+     * This appends a tile to the pack and records it in the index, replacing any tile stored at the same address.
+     * @param zoom The level.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @param tile The encoded tile.
+     * @throws IOException If the pack cannot be written.
+     */
+    public synchronized void put(int zoom, int x, int y, byte[] tile) throws IOException {
+        if (tile.length >= 1 << lengthBits) {
+            throw new IllegalArgumentException("Tile too large: " + tile.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes + tile.length);
+        buffer.putInt(zoom).putInt(x).putInt(y).putInt(tile.length).put(tile).flip();
+        long position = packSize + headerBytes;
+        while (buffer.hasRemaining()) {
+            pack.write(buffer, packSize + buffer.position());
+        }
+        packSize += headerBytes + tile.length;
+        long slot = getSlot(zoom, x, y);
+        getChunk(slot).putLong(getPosition(slot), position << lengthBits | tile.length); // after the tile, see the class comment
+    }
+
+    /**
+     * @return The number of tiles found since opening.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of tiles not found since opening.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The size of the pack in bytes.
+     */
+    public synchronized long getPackSize() {
+        return packSize;
+    }
+
+    /**
+     * This writes the pack and the index to disk and closes them.
+     * @throws IOException If they cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        pack.force(false);
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+        pack.close();
+        index.close();
+    }
+
+    /**
+     * This counts a lookup.
+     * @param isHit The flag indicating the tile was found or not.
+     */
+    private synchronized void count(boolean isHit) {
+        if (isHit) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    /**
+     * This gets the chunk of the index holding a slot, mapping it on first use.
+     * @param slot The slot.
+     * @return The chunk.
+     * @throws IOException If the chunk cannot be mapped.
+     */
+    private MappedByteBuffer getChunk(long slot) throws IOException {
+        int number = (int) (slot * slotBytes / chunkBytes);
+        synchronized (chunks) {
+            if (chunks[number] == null) {
+                chunks[number] = index.map(FileChannel.MapMode.READ_WRITE, (long) number * chunkBytes, chunkBytes); // grows the file with zeros
+            }
+            return chunks[number];
+        }
+    }
+
+    /**
+     * @param slot The slot.
+     * @return The position of the slot within its chunk.
+     */
+    private static int getPosition(long slot) {
+        return (int) (slot * slotBytes % chunkBytes);
+    }
+
+    /**
+     * This gets the slot of a tile in the quadtree index.
+     * @param zoom The level.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The slot.
+     */
+    private static long getSlot(int zoom, int x, int y) {
+        return ((1L << (2 * zoom)) - 1) / 3 + ((long) y << zoom) + x;
+    }
+}
@@ -0,0 +1,53 @@
+package model;
+
+/**
+ * This class stores the point of the graph the user is looking at, so the tiles around it are rendered first.
+ * The point is given as a fraction of the width and height, so it applies to renders of any resolution.
+ * It may move while a render is in progress; the tiles not yet started are then ordered around the new point.
+ */
+public class TileFocus {
+    private double x = 0.5; // the centre until the user points elsewhere
+    private double y = 0.5;
+    private int version = 0; // changed with every move, so schedulers know when to reorder
+
+    /**
+     * This moves the focus.
+     * @param x The position along the x-axis, from 0 (left) to 1 (right).
+     * @param y The position along the y-axis, from 0 (top) to 1 (bottom).
+     */
+    public synchronized void setFocus(double x, double y) {
+        if (x != this.x || y != this.y) {
+            this.x = Math.max(0, Math.min(1, x));
+            this.y = Math.max(0, Math.min(1, y));
+            version++;
+        }
+    }
+
+    /**
+     * This moves the focus back to the centre, e.g. after a zoom, which puts the selected square there.
+     */
+    public void centre() {
+        setFocus(0.5, 0.5);
+    }
+
+    /**
+     * @return The position along the x-axis, from 0 to 1.
+     */
+    public synchronized double getX() {
+        return x;
+    }
+
+    /**
+     * @return The position along the y-axis, from 0 to 1.
+     */
+    public synchronized double getY() {
+        return y;
+    }
+
+    /**
+     * @return The number of moves so far.
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+}
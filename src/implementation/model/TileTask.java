@@ -0,0 +1,69 @@
+package model;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class splits a rectangular area of the graph into tiles for the fork/join pool.
+ * Each task halves its area along the longer side until it is small enough,
+ * so idle workers can steal the expensive tiles near the boundary of the set.
+ */
+class TileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L; // tasks are never serialized, but ForkJoinTask is Serializable
+    static final int TILE_AREA = 64 * 64; // the largest area rendered without further splitting
+
+    /**
+     * This renders the pixels of a single tile.
+     */
+    interface TileKernel {
+        /**
+         * This renders all pixels within the given bounds.
+         * @param xStart The first column of the tile (inclusive).
+         * @param yStart The first row of the tile (inclusive).
+         * @param xEnd The last column of the tile (exclusive).
+         * @param yEnd The last row of the tile (exclusive).
+         */
+        void render(int xStart, int yStart, int xEnd, int yEnd);
+    }
+
+    private final TileKernel kernel;
+    private final int xStart;
+    private final int yStart;
+    private final int xEnd;
+    private final int yEnd;
+
+    /**
+     * This creates a task covering the given bounds.
+     * @param kernel The kernel used to render each tile.
+     * @param xStart The first column of the area (inclusive).
+     * @param yStart The first row of the area (inclusive).
+     * @param xEnd The last column of the area (exclusive).
+     * @param yEnd The last row of the area (exclusive).
+     */
+    TileTask(TileKernel kernel, int xStart, int yStart, int xEnd, int yEnd) {
+        this.kernel = kernel;
+        this.xStart = xStart;
+        this.yStart = yStart;
+        this.xEnd = xEnd;
+        this.yEnd = yEnd;
+    }
+
+    @Override
+    protected void compute() {
+        int width = xEnd - xStart;
+        int height = yEnd - yStart;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (width * height <= TILE_AREA) {
+            kernel.render(xStart, yStart, xEnd, yEnd);
+        } else if (width >= height) { // split the longer side to keep tiles roughly square
+            int xMid = xStart + width / 2;
+            invokeAll(new TileTask(kernel, xStart, yStart, xMid, yEnd),
+                    new TileTask(kernel, xMid, yStart, xEnd, yEnd));
+        } else {
+            int yMid = yStart + height / 2;
+            invokeAll(new TileTask(kernel, xStart, yStart, xEnd, yMid),
+                    new TileTask(kernel, xStart, yMid, xEnd, yEnd));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * This class stores the parameters of a view of the mandelbrot set: its bounds at arbitrary precision,
+ * the max. iterations and the escape radius. It is immutable, so a view can be shared between threads
+ * and renders without copying; every change gives a new viewport.
+ */
+public final class Viewport {
+    public static final int boundDigits = 20; // the digits kept beyond the size of the view
+
+    private final BigDecimal minReal;
+    private final BigDecimal maxReal;
+    private final BigDecimal minImaginary;
+    private final BigDecimal maxImaginary;
+    private final int maxIterations;
+    private final double radiusSquared;
+
+    /**
+     * This creates a viewport.
+     * @param minReal The lower real bound.
+     * @param maxReal The upper real bound, above the lower one.
+     * @param minImaginary The lower imaginary bound.
+     * @param maxImaginary The upper imaginary bound, above the lower one.
+     * @param maxIterations The max. iterations, at least 1.
+     * @param radiusSquared The square of the escape radius.
+     */
+    public Viewport(BigDecimal minReal, BigDecimal maxReal, BigDecimal minImaginary, BigDecimal maxImaginary,
+                    int maxIterations, double radiusSquared) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Max. iterations must be positive: " + maxIterations);
+        }
+        if (!(radiusSquared > 0)) {
+            throw new IllegalArgumentException("Radius squared must be positive: " + radiusSquared);
+        }
+        if (maxReal.compareTo(minReal) <= 0 || maxImaginary.compareTo(minImaginary) <= 0) { // a view without area has no pixel spacing
+            throw new IllegalArgumentException("The upper bounds must exceed the lower bounds: " + minReal + " " + maxReal + " " + minImaginary + " " + maxImaginary);
+        }
+        this.minReal = minReal;
+        this.maxReal = maxReal;
+        this.minImaginary = minImaginary;
+        this.maxImaginary = maxImaginary;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+    }
+
+    /**
+     * @return The viewport showing the whole set with default settings.
+     */
+    public static Viewport initial() {
+        return new Viewport(BigDecimal.valueOf(MandelbrotCalculator.INITIAL_MIN_REAL), BigDecimal.valueOf(MandelbrotCalculator.INITIAL_MAX_REAL),
+                BigDecimal.valueOf(MandelbrotCalculator.INITIAL_MIN_IMAGINARY), BigDecimal.valueOf(MandelbrotCalculator.INITIAL_MAX_IMAGINARY),
+                MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+
+    /**
+     * This parses the bounds written by 'getBounds'.
+     * @param bounds The four bounds separated by spaces.
+     * @param maxIterations The max. iterations.
+     * @param radiusSquared The square of the escape radius.
+     * @return The viewport.
+     */
+    public static Viewport parse(String bounds, int maxIterations, double radiusSquared) {
+        String[] values = bounds.trim().split(" ");
+        return new Viewport(new BigDecimal(values[0]), new BigDecimal(values[1]), new BigDecimal(values[2]), new BigDecimal(values[3]),
+                maxIterations, radiusSquared);
+    }
+
+    /**
+     * @return The four bounds separated by spaces, e.g. for the undo stacks.
+     */
+    public String getBounds() {
+        return minReal + " " + maxReal + " " + minImaginary + " " + maxImaginary;
+    }
+
+    /**
+     * @return The lower real bound.
+     */
+    public BigDecimal getMinReal() {
+        return minReal;
+    }
+
+    /**
+     * @return The upper real bound.
+     */
+    public BigDecimal getMaxReal() {
+        return maxReal;
+    }
+
+    /**
+     * @return The lower imaginary bound.
+     */
+    public BigDecimal getMinImaginary() {
+        return minImaginary;
+    }
+
+    /**
+     * @return The upper imaginary bound.
+     */
+    public BigDecimal getMaxImaginary() {
+        return maxImaginary;
+    }
+
+    /**
+     * @return The max. iterations.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * @return The square of the escape radius.
+     */
+    public double getRadiusSquared() {
+        return radiusSquared;
+    }
+
+    /**
+     * This gets the same view with different bounds.
+     * @param minReal The lower real bound.
+     * @param maxReal The upper real bound.
+     * @param minImaginary The lower imaginary bound.
+     * @param maxImaginary The upper imaginary bound.
+     * @return The new viewport.
+     */
+    public Viewport withBounds(BigDecimal minReal, BigDecimal maxReal, BigDecimal minImaginary, BigDecimal maxImaginary) {
+        return new Viewport(minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+    }
+
+    /**
+     * This gets the same view with different max. iterations.
+     * @param maxIterations The max. iterations.
+     * @return The new viewport.
+     */
+    public Viewport withMaxIterations(int maxIterations) {
+        return new Viewport(minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+    }
+
+    /**
+     * This gets the view moved by whole pixels.
+     * It is exact, so the view keeps its size and the pixels of both views lie on the same grid, see 'PixelGrid'.
+     * The bounds only get the few digits of the pixel size, however often the view is moved.
+     * @param xShift The number of pixels the view moves along the x-axis.
+     * @param yShift The number of pixels the view moves along the y-axis.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @return The new viewport.
+     */
+    public Viewport pan(int xShift, int yShift, int xResolution, int yResolution) {
+        BigDecimal xOffset = getPixelSize(maxReal.subtract(minReal), xResolution).multiply(BigDecimal.valueOf(xShift));
+        BigDecimal yOffset = getPixelSize(maxImaginary.subtract(minImaginary), yResolution).multiply(BigDecimal.valueOf(yShift));
+        return withBounds(minReal.add(xOffset), maxReal.add(xOffset), minImaginary.add(yOffset), maxImaginary.add(yOffset));
+    }
+
+    /**
+     * This gets the view of a square selected in pixels.
+     * @param x The left side of the square in pixels.
+     * @param y The top side of the square in pixels.
+     * @param length The length of the square in pixels.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @return The new viewport.
+     */
+    public Viewport zoom(double x, double y, double length, int xResolution, int yResolution) {
+        BigDecimal xScale = getPixelSize(maxReal.subtract(minReal), xResolution); // used to calculate offset from pixel positions
+        BigDecimal yScale = getPixelSize(maxImaginary.subtract(minImaginary), yResolution);
+        BigDecimal left = BigDecimal.valueOf(x);
+        BigDecimal top = BigDecimal.valueOf(y);
+        BigDecimal side = BigDecimal.valueOf(length);
+        BigDecimal width = xScale.multiply(side); // the size of the new view, used to round its bounds
+        BigDecimal height = yScale.multiply(side);
+        return withBounds(round(minReal.add(xScale.multiply(left)), width), round(minReal.add(xScale.multiply(left.add(side))), width),
+                round(minImaginary.add(yScale.multiply(top)), height), round(minImaginary.add(yScale.multiply(top.add(side))), height));
+    }
+
+    /**
+     * This gets the magnification relative to the initial view, using the areas of both views.
+     * @return The magnification.
+     */
+    public double getMagnification() {
+        double magnification = (MandelbrotCalculator.INITIAL_MAX_REAL - MandelbrotCalculator.INITIAL_MIN_REAL) / maxReal.subtract(minReal).doubleValue();
+        return magnification * (MandelbrotCalculator.INITIAL_MAX_IMAGINARY - MandelbrotCalculator.INITIAL_MIN_IMAGINARY) / maxImaginary.subtract(minImaginary).doubleValue();
+    }
+
+    /**
+     * This gets the arithmetic needed to render the view at the given resolution.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @return The cheapest precision which can tell neighbouring pixels apart.
+     */
+    public MandelbrotCalculator.Precision getPrecision(int xResolution, int yResolution) {
+        return MandelbrotCalculator.getPrecision(getPixelSpacing(xResolution, yResolution));
+    }
+
+    /**
+     * This gets the smaller of the distances between horizontally and vertically neighbouring pixels.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @return The pixel spacing in the complex plane.
+     */
+    public double getPixelSpacing(int xResolution, int yResolution) {
+        double realStep = maxReal.subtract(minReal).doubleValue() / xResolution; // the difference is exact, so only rounded once
+        double imaginaryStep = maxImaginary.subtract(minImaginary).doubleValue() / yResolution;
+        return Math.min(realStep, imaginaryStep);
+    }
+
+    /**
+     * This divides the size of the view by its number of pixels.
+     * @param size The width or height of the view.
+     * @param resolution The number of pixels along the same axis.
+     * @return The size of a pixel, exact if the resolution only has factors 2 and 5 like the draw size.
+     *         Otherwise it only depends on the value of the size, so a moved view has the same pixel size.
+     */
+    static BigDecimal getPixelSize(BigDecimal size, int resolution) {
+        size = size.stripTrailingZeros(); // e.g. the width of a moved view has the scale of its bounds
+        try {
+            return size.divide(BigDecimal.valueOf(resolution));
+        } catch (ArithmeticException e) { // non-terminating, far more digits than 'round' keeps
+            return size.divide(BigDecimal.valueOf(resolution), new MathContext(size.precision() + 2 * boundDigits));
+        }
+    }
+
+    /**
+     * This rounds a bound to 'boundDigits' digits beyond the size of the view,
+     * so the number of digits only grows with the depth of the zoom.
+     * @param bound The bound to be rounded.
+     * @param size The width or height of the view.
+     * @return The rounded bound.
+     */
+    private static BigDecimal round(BigDecimal bound, BigDecimal size) {
+        if (size.signum() == 0) {
+            return bound; // an empty view has no size to round to
+        }
+        int exponent = size.precision() - size.scale() - 1; // the position of the leading digit of the size
+        return bound.setScale(boundDigits - exponent, RoundingMode.HALF_EVEN).stripTrailingZeros();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Viewport)) {
+            return false;
+        }
+        Viewport viewport = (Viewport) other;
+        return minReal.compareTo(viewport.minReal) == 0 && maxReal.compareTo(viewport.maxReal) == 0
+                && minImaginary.compareTo(viewport.minImaginary) == 0 && maxImaginary.compareTo(viewport.maxImaginary) == 0
+                && maxIterations == viewport.maxIterations && radiusSquared == viewport.radiusSquared;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = minReal.stripTrailingZeros().hashCode();
+        hash = 31 * hash + maxReal.stripTrailingZeros().hashCode();
+        hash = 31 * hash + minImaginary.stripTrailingZeros().hashCode();
+        hash = 31 * hash + maxImaginary.stripTrailingZeros().hashCode();
+        hash = 31 * hash + maxIterations;
+        return 31 * hash + Double.hashCode(radiusSquared);
+    }
+
+    @Override
+    public String toString() {
+        return getBounds() + " " + maxIterations + " " + radiusSquared;
+    }
+}
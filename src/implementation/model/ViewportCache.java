@@ -0,0 +1,186 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class stores the graphs of recently rendered views, so undo/ redo and revisits
+ * do not need to calculate them again. Each graph is stored with 1, 2 or 4 bytes per pixel
+ * depending on its max. iterations, and the least recently used graphs are evicted
+ * once the total size is above the budget.
+ */
+public class ViewportCache {
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true); // in access order
+    private long maxBytes;
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * This creates an empty cache.
+     * @param maxBytes The maximum total size of the stored graphs.
+     */
+    public ViewportCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    /**
+     * This builds the key identifying a view.
+     * Bounds are written at full precision without trailing zeros, so only identical views share a key.
+     * @param xResolution The number of pixels on the x-axis.
+     * @param yResolution The number of pixels on the y-axis.
+     * @param minReal The lower real bound of the view.
+     * @param maxReal The upper real bound of the view.
+     * @param minImaginary The lower imaginary bound of the view.
+     * @param maxImaginary The upper imaginary bound of the view.
+     * @param maxIterations The max. iterations of the view.
+     * @param radiusSquared The square of the escape radius.
+     * @return The key of the view.
+     */
+    public static String getKey(int xResolution, int yResolution, BigDecimal minReal, BigDecimal maxReal,
+                                BigDecimal minImaginary, BigDecimal maxImaginary, int maxIterations, double radiusSquared) {
+        return minReal.stripTrailingZeros() + " " + maxReal.stripTrailingZeros() + " " +
+                minImaginary.stripTrailingZeros() + " " + maxImaginary.stripTrailingZeros() + " " +
+                maxIterations + " " + radiusSquared + " " + xResolution + "x" + yResolution;
+    }
+
+    /**
+     * This copies a stored graph into the given buffer.
+     * @param key The key of the view.
+     * @param graph The buffer to write to, holding as many values as the stored graph.
+     * @param maxIterations The max. iterations of the view, used to decode the graph.
+     * @return true if the graph was found, false if the buffer is unchanged.
+     */
+    public synchronized boolean get(String key, int[] graph, int maxIterations) {
+        byte[] data = entries.get(key);
+        if (data == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        int width = getBytesPerValue(maxIterations);
+        int count = data.length / width;
+        for (int index = 0, offset = 0; index < count; index++, offset += width) {
+            int value = data[offset] & 0xff;
+            for (int shift = 1; shift < width; shift++) {
+                value |= (data[offset + shift] & 0xff) << (8 * shift);
+            }
+            graph[index] = value;
+        }
+        return true;
+    }
+
+    /**
+     * This stores a copy of the given graph, evicting the least recently used graphs if needed.
+     * Graphs larger than the whole budget are not stored.
+     * @param key The key of the view.
+     * @param graph The graph to be stored.
+     * @param size The number of values in the graph.
+     * @param maxIterations The max. iterations of the view, used to encode the graph.
+     */
+    public synchronized void put(String key, int[] graph, int size, int maxIterations) {
+        int width = getBytesPerValue(maxIterations);
+        if ((long) size * width > maxBytes || entries.containsKey(key)) {
+            return;
+        }
+        byte[] data = new byte[size * width];
+        for (int index = 0, offset = 0; index < size; index++, offset += width) {
+            int value = graph[index];
+            for (int shift = 0; shift < width; shift++) {
+                data[offset + shift] = (byte) (value >>> (8 * shift));
+            }
+        }
+        entries.put(key, data);
+        usedBytes += data.length;
+        evict();
+    }
+
+    /**
+     * This removes all stored graphs. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * This changes the budget, evicting graphs if needed.
+     * @param maxBytes The maximum total size of the stored graphs.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Budget must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return The maximum total size of the stored graphs.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The total size of the stored graphs.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return The number of stored graphs.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of lookups which found a graph.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups which found no graph.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of graphs removed to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * This removes the least recently used graphs until the total size is within the budget.
+     */
+    private void evict() {
+        Iterator<byte[]> iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * This gets the number of bytes needed to store values from 0 to max. iterations.
+     * @param maxIterations The max. iterations of the view.
+     * @return 1, 2 or 4.
+     */
+    static int getBytesPerValue(int maxIterations) {
+        if (maxIterations <= 0xff) {
+            return 1;
+        }
+        return maxIterations <= 0xffff ? 2 : 4;
+    }
+}
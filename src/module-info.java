@@ -2,6 +2,9 @@ module com.example.mp2 {
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.graphics;
+    requires java.management; // the render metrics MBean
+    requires jdk.httpserver; // the tile server
+    requires static jdk.incubator.vector; // optional, only used by the SIMD kernel of the vector profile
 
     opens implementation to javafx.fxml;
     exports implementation.delegate;
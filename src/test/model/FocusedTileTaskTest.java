@@ -0,0 +1,51 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the reusable tile queue of 'FocusedTileTask'.
+ */
+class FocusedTileTaskTest {
+
+    @Test
+    void tilesComeNearestFirstAndCoverTheArea() {
+        FocusedTileTask.Tiles tiles = new FocusedTileTask.Tiles();
+        for (int render = 0; render < 2; render++) { // the second render reuses the arrays of the first
+            tiles.split(0, 0, 10, 7, 3);
+            tiles.order(9, 0, 1);
+            boolean[] covered = new boolean[70];
+            double last = 0;
+            int count = 0;
+            for (int tile = tiles.poll(); tile >= 0; tile = tiles.poll()) {
+                int[] bounds = tiles.bounds;
+                double dx = (bounds[4 * tile] + bounds[4 * tile + 2]) / 2.0 - 9;
+                double dy = (bounds[4 * tile + 1] + bounds[4 * tile + 3]) / 2.0;
+                assertTrue(dx * dx + dy * dy >= last);
+                last = dx * dx + dy * dy;
+                for (int y = bounds[4 * tile + 1]; y < bounds[4 * tile + 3]; y++) {
+                    for (int x = bounds[4 * tile]; x < bounds[4 * tile + 2]; x++) {
+                        assertFalse(covered[y * 10 + x]);
+                        covered[y * 10 + x] = true;
+                    }
+                }
+                count++;
+            }
+            assertEquals(12, count);
+            for (boolean pixel : covered) {
+                assertTrue(pixel);
+            }
+        }
+    }
+
+    @Test
+    void anEmptyAreaHasNoTiles() {
+        FocusedTileTask.Tiles tiles = new FocusedTileTask.Tiles();
+        tiles.split(5, 5, 5, 9, 4);
+        tiles.order(0, 0, 1);
+        assertEquals(-1, tiles.poll());
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static model.IterationTuner.probeSize;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests when 'IterationTuner' decides a cap cut off the boundary of the set.
+ */
+class IterationTunerTest {
+    private static final int cap = 100;
+    private static final int raised = 200;
+
+    @Test
+    void escapingBoundaryIsCutOff() {
+        int[] probe = getHalfPlane();
+        int[] doubled = getBounded(probe);
+        for (int y = 0; y < probeSize; y++) { // the saturated column along the boundary escapes with the raised cap
+            doubled[y * probeSize + probeSize / 2] = cap + 10;
+        }
+        assertTrue(IterationTuner.isCutOff(probe, doubled, cap, raised));
+    }
+
+    @Test
+    void boundedBoundaryIsNotCutOff() {
+        int[] probe = getHalfPlane();
+        assertFalse(IterationTuner.isCutOff(probe, getBounded(probe), cap, raised)); // every saturated pixel stays bounded
+    }
+
+    @Test
+    void interiorPixelsDoNotCount() {
+        int[] probe = getHalfPlane();
+        int[] doubled = getBounded(probe);
+        for (int y = 0; y < probeSize; y++) {
+            for (int x = probeSize / 2; x < probeSize; x++) {
+                doubled[y * probeSize + x] = x == probeSize / 2 ? raised : cap + 10; // only pixels away from the boundary escape
+            }
+        }
+        assertFalse(IterationTuner.isCutOff(probe, doubled, cap, raised));
+    }
+
+    @Test
+    void fewEscapingPixelsAreNoise() {
+        int[] probe = getHalfPlane();
+        int[] doubled = getBounded(probe);
+        for (int y = 0; y < 3; y++) {
+            doubled[y * probeSize + probeSize / 2] = cap + 10;
+        }
+        assertFalse(IterationTuner.isCutOff(probe, doubled, cap, raised));
+    }
+
+    @Test
+    void blobCountsEveryPixel() {
+        int[] probe = new int[probeSize * probeSize];
+        Arrays.fill(probe, cap);
+        int[] doubled = getBounded(probe);
+        Arrays.fill(doubled, 0, doubled.length / 2, cap + 10);
+        assertTrue(IterationTuner.isCutOff(probe, doubled, cap, raised));
+        Arrays.fill(doubled, raised);
+        assertFalse(IterationTuner.isCutOff(probe, doubled, cap, raised));
+    }
+
+    /**
+     * @param probe The probe with the cap.
+     * @return The probe with the raised cap, if no pixel escaped beyond the cap.
+     */
+    private static int[] getBounded(int[] probe) {
+        int[] doubled = probe.clone();
+        for (int index = 0; index < doubled.length; index++) {
+            doubled[index] = doubled[index] == cap ? raised : doubled[index];
+        }
+        return doubled;
+    }
+
+    /**
+     * @return A probe which escaped on its left half and reached the cap on its right half.
+     */
+    private static int[] getHalfPlane() {
+        int[] probe = new int[probeSize * probeSize];
+        for (int y = 0; y < probeSize; y++) {
+            for (int x = 0; x < probeSize; x++) {
+                probe[y * probeSize + x] = x < probeSize / 2 ? 5 : cap;
+            }
+        }
+        return probe;
+    }
+}
@@ -0,0 +1,89 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the shortcuts of 'MandelbrotCalculator.calcMandel', which must never change a result.
+ */
+class MandelbrotCalculatorTest {
+    private static final int maxIterations = 2000;
+    private static final double radiusSquared = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+
+    private final MandelbrotCalculator mandelCalc = new MandelbrotCalculator(1);
+
+    @Test
+    void interiorPointsAreRecognised() {
+        assertTrue(MandelbrotCalculator.isInterior(0, 0)); // the centre of the main cardioid
+        assertTrue(MandelbrotCalculator.isInterior(-0.5, 0.3));
+        assertTrue(MandelbrotCalculator.isInterior(-1, 0)); // the centre of the period-2 bulb
+        assertTrue(MandelbrotCalculator.isInterior(-1.1, 0.1));
+    }
+
+    @Test
+    void exteriorPointsAreNotInterior() {
+        assertFalse(MandelbrotCalculator.isInterior(0.3, 0)); // just outside the cusp of the cardioid
+        assertFalse(MandelbrotCalculator.isInterior(-0.75, 0.1)); // between the cardioid and the bulb
+        assertFalse(MandelbrotCalculator.isInterior(-1.3, 0));
+        assertFalse(MandelbrotCalculator.isInterior(-2, 1));
+    }
+
+    @Test
+    void interiorCheckKeepsEveryValue() {
+        forEachPoint((cReal, cImaginary) -> assertEquals(
+                mandelCalc.calcMandel(cReal, cImaginary, maxIterations, radiusSquared, false, false),
+                mandelCalc.calcMandel(cReal, cImaginary, maxIterations, radiusSquared, true, false),
+                "C = " + cReal + " + " + cImaginary + "i"));
+    }
+
+    @Test
+    void periodicityCheckKeepsEveryValue() {
+        forEachPoint((cReal, cImaginary) -> assertEquals(
+                mandelCalc.calcMandel(cReal, cImaginary, maxIterations, radiusSquared, false, false),
+                mandelCalc.calcMandel(cReal, cImaginary, maxIterations, radiusSquared, false, true),
+                "C = " + cReal + " + " + cImaginary + "i"));
+    }
+
+    @Test
+    void interiorCheckIsSkippedForSmallRadius() {
+        // with a radius below 2 even interior orbits can leave the circle, so they must be iterated
+        int checked = mandelCalc.calcMandel(-1, 0, maxIterations, 0.5, true, false);
+        assertEquals(mandelCalc.calcMandel(-1, 0, maxIterations, 0.5, false, false), checked);
+        assertTrue(checked < maxIterations);
+    }
+
+    @Test
+    void resumedValuesMatchFreshValues() {
+        IterationState state = new IterationState(1);
+        int lowered = maxIterations / 8;
+        forEachPoint((cReal, cImaginary) -> {
+            String point = "C = " + cReal + " + " + cImaginary + "i";
+            assertEquals(mandelCalc.calcMandel(cReal, cImaginary, lowered, radiusSquared, true, true),
+                    mandelCalc.calcMandel(0, cReal, cImaginary, state, false, lowered, radiusSquared, true, true), point);
+            assertEquals(mandelCalc.calcMandel(cReal, cImaginary, maxIterations, radiusSquared, true, true),
+                    mandelCalc.calcMandel(0, cReal, cImaginary, state, true, maxIterations, radiusSquared, true, true), point);
+        });
+    }
+
+    /**
+     * This calls the given check for a grid of points around the set.
+     * @param check The check.
+     */
+    private static void forEachPoint(PointCheck check) {
+        for (int y = 0; y <= 40; y++) {
+            for (int x = 0; x <= 54; x++) {
+                check.accept(-2 + x * 0.05, -1 + y * 0.05);
+            }
+        }
+    }
+
+    /**
+     * This checks a point.
+     */
+    private interface PointCheck {
+        void accept(double cReal, double cImaginary);
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests that the bands written by 'PngBandWriter' make a valid PNG, also after resuming.
+ */
+class PngBandWriterTest {
+    private static final int width = 37;
+    private static final int height = 25;
+    private static final int bandHeight = 10;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void bandsMakeTheImage() throws IOException {
+        File file = new File(directory, "image.png");
+        int[] pixels = getPixels();
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, "test")) {
+            assertEquals(3, writer.getBands());
+            for (int band = 0; band < writer.getBands(); band++) {
+                writer.write(encode(pixels, band));
+            }
+        }
+        assertArrayEquals(pixels, read(file));
+        assertFalse(new File(file.getPath() + ".checkpoint").exists());
+    }
+
+    @Test
+    void interruptedImageIsResumed() throws IOException {
+        File file = new File(directory, "image.png");
+        int[] pixels = getPixels();
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, "test")) {
+            writer.write(encode(pixels, 0));
+        }
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, "test")) {
+            assertEquals(1, writer.getNextBand());
+            for (int band = writer.getNextBand(); band < writer.getBands(); band++) {
+                writer.write(encode(pixels, band));
+            }
+        }
+        assertArrayEquals(pixels, read(file));
+    }
+
+    @Test
+    void checkpointOfOtherImageIsIgnored() throws IOException {
+        File file = new File(directory, "image.png");
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, "test")) {
+            writer.write(encode(getPixels(), 0));
+        }
+        try (PngBandWriter writer = new PngBandWriter(file, width, height, bandHeight, "other")) {
+            assertEquals(0, writer.getNextBand());
+        }
+    }
+
+    @Test
+    void completeImageTakesNoMoreBands() throws IOException {
+        File file = new File(directory, "image.png");
+        int[] pixels = new int[width];
+        try (PngBandWriter writer = new PngBandWriter(file, width, 1, 1, "test")) {
+            writer.write(PngBandWriter.encode(pixels, width, 1, true));
+            assertThrows(IllegalStateException.class, () -> writer.write(PngBandWriter.encode(pixels, width, 1, true)));
+        }
+    }
+
+    /**
+     * @return Colors which differ in every channel, so the filters are exercised.
+     */
+    private static int[] getPixels() {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = 0xff000000 | (x * 7) << 16 | (y * 11) << 8 | (x * y) & 0xff;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * This encodes a band of the image.
+     * @param pixels The image.
+     * @param band The number of the band.
+     * @return The encoded band.
+     */
+    private static PngBandWriter.Band encode(int[] pixels, int band) {
+        int yStart = band * bandHeight;
+        int rows = Math.min(bandHeight, height - yStart);
+        return PngBandWriter.encode(Arrays.copyOfRange(pixels, yStart * width, (yStart + rows) * width), width, rows, yStart + rows == height);
+    }
+
+    /**
+     * This reads a PNG with the decoder of the JDK.
+     * @param file The PNG.
+     * @return The colors of the image (ARGB).
+     * @throws IOException If the PNG is invalid.
+     */
+    private static int[] read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+}
@@ -0,0 +1,93 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the graphs a 'RenderSession' reuses are the same as those it would calculate.
+ */
+class RenderSessionTest {
+    private static final int[][] shifts = {{37, 0}, {0, -23}, {-70, 61}, {5, 5}};
+
+    private final MandelbrotCalculator mandelCalc = new MandelbrotCalculator(1);
+
+    @Test
+    void panGivesTheGraphOfAFreshRender() {
+        assertPansMatch(ViewportTest.getView("-0.8", "-0.7", "0.05", "0.15", 500), 200);
+    }
+
+    @Test
+    void panAtDoubleDoubleGivesTheGraphOfAFreshRender() {
+        // around the Misiurewicz point i, where pixels escape at moderate counts at any depth
+        Viewport view = ViewportTest.getView("-1E-18", "1E-18", "0.999999999999999999", "1.000000000000000001", 1000);
+        assertEquals(MandelbrotCalculator.Precision.DOUBLE_DOUBLE, view.getPrecision(100, 100));
+        assertPansMatch(view, 100);
+    }
+
+    @Test
+    void resumeGivesTheGraphOfAFreshRender() {
+        Viewport view = ViewportTest.getView("-0.8", "-0.7", "0.05", "0.15", 100);
+        RenderMetrics metrics = new RenderMetrics();
+        RenderSession session = getSession(200, metrics);
+        session.render(view, 1, false, null, () -> false);
+        view = view.withMaxIterations(500);
+        session.render(view, 1, false, null, () -> false);
+        assertEquals("resume", metrics.getLastKind());
+        assertArrayEquals(render(view, 200), copyGraph(session, 200));
+    }
+
+    /**
+     * This moves a view a few times and compares each moved graph with a fresh render of the moved view.
+     * @param view The first view.
+     * @param resolution The width and height of the graph.
+     */
+    private void assertPansMatch(Viewport view, int resolution) {
+        RenderMetrics metrics = new RenderMetrics();
+        RenderSession session = getSession(resolution, metrics);
+        assertTrue(session.render(view, 1, false, null, () -> false));
+        for (int[] shift : shifts) {
+            view = view.pan(shift[0], shift[1], resolution, resolution);
+            assertTrue(session.render(view, 1, false, null, () -> false));
+            assertEquals("pan", metrics.getLastKind());
+            assertArrayEquals(render(view, resolution), copyGraph(session, resolution), "after moving by " + shift[0] + ", " + shift[1]);
+        }
+    }
+
+    /**
+     * This calculates a view from scratch in a new session.
+     * @param view The view.
+     * @param resolution The width and height of the graph.
+     * @return The graph.
+     */
+    private int[] render(Viewport view, int resolution) {
+        RenderSession session = getSession(resolution, null);
+        assertTrue(session.render(view, 1, false, null, () -> false));
+        return copyGraph(session, resolution);
+    }
+
+    /**
+     * This creates a session keeping the iteration state, as the GUI does.
+     * @param resolution The width and height of the graph.
+     * @param metrics The metrics recording how each graph is calculated, or null for none.
+     * @return The session.
+     */
+    private RenderSession getSession(int resolution, RenderMetrics metrics) {
+        RenderSession session = new RenderSession(resolution, resolution, mandelCalc, null, metrics);
+        session.setKeepIterationState(true);
+        return session;
+    }
+
+    /**
+     * @param session The session.
+     * @param resolution The width and height of the graph.
+     * @return A copy of the graph of the session.
+     */
+    private static int[] copyGraph(RenderSession session, int resolution) {
+        int[] graph = new int[resolution * resolution];
+        session.copyGraph(graph);
+        return graph;
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that 'TileCache' keeps tiles by address, across restarts.
+ */
+class TileCacheTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void storedTilesAreFound() throws IOException {
+        try (TileCache cache = new TileCache(directory, 3, "test")) {
+            cache.put(0, 0, 0, new byte[]{1});
+            cache.put(3, 7, 5, new byte[]{2, 3});
+            cache.put(3, 5, 7, new byte[]{4});
+            assertArrayEquals(new byte[]{1}, cache.get(0, 0, 0));
+            assertArrayEquals(new byte[]{2, 3}, cache.get(3, 7, 5));
+            assertArrayEquals(new byte[]{4}, cache.get(3, 5, 7));
+            assertNull(cache.get(2, 1, 1));
+            assertEquals(3, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    void replacedTileIsTheNewOne() throws IOException {
+        try (TileCache cache = new TileCache(directory, 2, "test")) {
+            cache.put(1, 1, 0, new byte[]{1, 2, 3});
+            cache.put(1, 1, 0, new byte[]{4});
+            assertArrayEquals(new byte[]{4}, cache.get(1, 1, 0));
+        }
+    }
+
+    @Test
+    void tilesSurviveRestart() throws IOException {
+        try (TileCache cache = new TileCache(directory, 2, "test")) {
+            cache.put(2, 3, 1, new byte[]{9, 8});
+        }
+        try (TileCache cache = new TileCache(directory, 2, "test")) {
+            assertArrayEquals(new byte[]{9, 8}, cache.get(2, 3, 1));
+            cache.put(2, 0, 0, new byte[]{7}); // appended after the tiles of the first run
+            assertArrayEquals(new byte[]{9, 8}, cache.get(2, 3, 1));
+            assertArrayEquals(new byte[]{7}, cache.get(2, 0, 0));
+        }
+    }
+
+    @Test
+    void truncatedPackIsNotTrusted() throws IOException {
+        try (TileCache cache = new TileCache(directory, 1, "test")) {
+            cache.put(1, 0, 1, new byte[]{1, 2, 3, 4});
+        }
+        try (RandomAccessFile pack = new RandomAccessFile(new File(directory, "tiles.pack"), "rw")) {
+            pack.setLength(pack.length() - 1); // e.g. a crash before the tile was on disk
+        }
+        try (TileCache cache = new TileCache(directory, 1, "test")) {
+            assertNull(cache.get(1, 0, 1));
+        }
+    }
+
+    @Test
+    void cacheOfOtherTilesIsRefused() throws IOException {
+        new TileCache(directory, 2, "test").close();
+        assertThrows(IOException.class, () -> new TileCache(directory, 2, "other"));
+        assertThrows(IOException.class, () -> new TileCache(directory, 3, "test"));
+    }
+
+    @Test
+    void addressesOutsideThePyramidAreRejected() throws IOException {
+        try (TileCache cache = new TileCache(directory, 2, "test")) {
+            assertTrue(cache.contains(2, 3, 3));
+            assertFalse(cache.contains(2, 4, 0));
+            assertFalse(cache.contains(3, 0, 0));
+            assertFalse(cache.contains(-1, 0, 0));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TileCache(directory, TileCache.maxZoomLimit + 1, "test"));
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the encoding and eviction of 'ViewportCache'.
+ */
+class ViewportCacheTest {
+    @Test
+    void valuesTakeTheFewestBytes() {
+        assertEquals(1, ViewportCache.getBytesPerValue(0xff));
+        assertEquals(2, ViewportCache.getBytesPerValue(0x100));
+        assertEquals(2, ViewportCache.getBytesPerValue(0xffff));
+        assertEquals(4, ViewportCache.getBytesPerValue(0x10000));
+    }
+
+    @Test
+    void graphsAreStoredExactly() {
+        ViewportCache cache = new ViewportCache(1 << 20);
+        for (int maxIterations : new int[]{200, 60000, 100000}) {
+            int[] graph = {0, 1, maxIterations / 2, maxIterations - 1, maxIterations};
+            cache.put("view " + maxIterations, graph, graph.length, maxIterations);
+            int[] copy = new int[graph.length];
+            assertTrue(cache.get("view " + maxIterations, copy, maxIterations));
+            assertArrayEquals(graph, copy);
+        }
+        assertEquals(5 + 10 + 20, cache.getUsedBytes());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        ViewportCache cache = new ViewportCache(20);
+        int[] graph = new int[10];
+        cache.put("first", graph, graph.length, 100);
+        cache.put("second", graph, graph.length, 100);
+        assertTrue(cache.get("first", graph, 100)); // now the second is the least recently used
+        cache.put("third", graph, graph.length, 100);
+        assertTrue(cache.get("first", graph, 100));
+        assertFalse(cache.get("second", graph, 100));
+        assertTrue(cache.get("third", graph, 100));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(20, cache.getUsedBytes());
+    }
+
+    @Test
+    void graphLargerThanBudgetIsNotStored() {
+        ViewportCache cache = new ViewportCache(10);
+        int[] graph = new int[11];
+        cache.put("large", graph, graph.length, 100);
+        assertEquals(0, cache.getSize());
+        assertFalse(cache.get("large", graph, 100));
+    }
+
+    @Test
+    void keysIgnoreTrailingZeros() {
+        assertEquals(ViewportCache.getKey(10, 10, new BigDecimal("-2.0"), new BigDecimal("2"), new BigDecimal("-2"), new BigDecimal("2.00"), 50, 4),
+                ViewportCache.getKey(10, 10, new BigDecimal("-2"), new BigDecimal("2"), new BigDecimal("-2"), new BigDecimal("2"), 50, 4));
+        assertNotEquals(ViewportCache.getKey(10, 10, BigDecimal.ZERO, BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ONE, 50, 4),
+                ViewportCache.getKey(10, 20, BigDecimal.ZERO, BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ONE, 50, 4));
+    }
+}
@@ -0,0 +1,101 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the immutable views of 'Viewport'.
+ */
+class ViewportTest {
+    private static final int resolution = 1000;
+
+    @Test
+    void invalidViewsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> getView("-1", "-1", "-1", "1", 50));
+        assertThrows(IllegalArgumentException.class, () -> getView("-1", "1", "1", "-1", 50));
+        assertThrows(IllegalArgumentException.class, () -> getView("-1", "1", "-1", "1", 0));
+        assertThrows(IllegalArgumentException.class, () -> new Viewport(BigDecimal.ZERO, BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ONE, 50, 0));
+    }
+
+    @Test
+    void trailingZerosDoNotMatter() {
+        Viewport view = getView("-2", "0.7", "-1.25", "1.25", 50);
+        Viewport padded = getView("-2.000", "0.70", "-1.2500", "1.25", 50);
+        assertEquals(view, padded);
+        assertEquals(view.hashCode(), padded.hashCode());
+        assertNotEquals(view, view.withMaxIterations(51));
+    }
+
+    @Test
+    void boundsAreParsedBack() {
+        Viewport view = getView("-0.7436438870371587", "-0.7436438870371586", "0.131825904205311", "0.131825904205312", 500);
+        assertEquals(view, Viewport.parse(view.getBounds(), view.getMaxIterations(), view.getRadiusSquared()));
+    }
+
+    @Test
+    void wholeSquareZoomKeepsTheView() {
+        Viewport view = getView("-2", "2", "-2", "2", 50);
+        assertEquals(view, view.zoom(0, 0, resolution, resolution, resolution));
+    }
+
+    @Test
+    void zoomSelectsTheSquare() {
+        Viewport view = getView("-2", "2", "-2", "2", 50);
+        Viewport zoomed = view.zoom(250, 500, 100, resolution, resolution);
+        assertEquals(0, new BigDecimal("-1").compareTo(zoomed.getMinReal()));
+        assertEquals(0, new BigDecimal("-0.6").compareTo(zoomed.getMaxReal()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(zoomed.getMinImaginary()));
+        assertEquals(0, new BigDecimal("0.4").compareTo(zoomed.getMaxImaginary()));
+        assertEquals(100 * view.getMagnification(), zoomed.getMagnification(), 1e-9); // by area
+    }
+
+    @Test
+    void panKeepsThePixelGrid() {
+        Viewport view = getView("-0.8", "-0.7", "0.05", "0.15", 500);
+        Viewport moved = view.pan(37, -23, 768, 768); // the pixel size does not terminate in decimals
+        assertEquals(0, view.getMaxReal().subtract(view.getMinReal()).compareTo(moved.getMaxReal().subtract(moved.getMinReal())));
+        assertEquals(0, view.getMaxImaginary().subtract(view.getMinImaginary()).compareTo(moved.getMaxImaginary().subtract(moved.getMinImaginary())));
+        assertEquals(view, moved.pan(-37, 23, 768, 768));
+        assertEquals(view.pan(40, 0, resolution, resolution), view.pan(15, 0, resolution, resolution).pan(25, 0, resolution, resolution));
+    }
+
+    @Test
+    void panOnlyMovesTheIndexesOfTheGrid() {
+        Viewport view = getView("-0.8", "-0.7", "-0.15", "-0.05", 500);
+        Viewport moved = view.pan(37, -23, resolution, resolution);
+        PixelGrid grid = PixelGrid.anchored(resolution, resolution, view);
+        PixelGrid movedGrid = PixelGrid.anchored(resolution, resolution, moved);
+        for (int index = 0; index < resolution - 37; index++) {
+            assertEquals(grid.getReal(index + 37), movedGrid.getReal(index));
+        }
+        for (int index = 23; index < resolution; index++) {
+            assertEquals(grid.getImaginary(index - 23), movedGrid.getImaginary(index));
+        }
+    }
+
+    @Test
+    void precisionFollowsThePixelSpacing() {
+        assertEquals(MandelbrotCalculator.Precision.DOUBLE, Viewport.initial().getPrecision(resolution, resolution));
+        Viewport deep = getView("-0.75000000000000000001", "-0.75", "0.1", "0.10000000000000000001", 50);
+        assertEquals(MandelbrotCalculator.Precision.DOUBLE_DOUBLE, deep.getPrecision(resolution, resolution));
+    }
+
+    /**
+     * This creates a view with the default escape radius.
+     * @param minReal The lower real bound.
+     * @param maxReal The upper real bound.
+     * @param minImaginary The lower imaginary bound.
+     * @param maxImaginary The upper imaginary bound.
+     * @param maxIterations The max. iterations.
+     * @return The view.
+     */
+    static Viewport getView(String minReal, String maxReal, String minImaginary, String maxImaginary, int maxIterations) {
+        return new Viewport(new BigDecimal(minReal), new BigDecimal(maxReal), new BigDecimal(minImaginary), new BigDecimal(maxImaginary),
+                maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class iterates a lane-width batch of adjacent pixels together using the Vector API.
+ * Every lane runs the same formula as 'MandelbrotCalculator.calcMandel'; lanes whose Z escaped
+ * are masked out and the batch stops once no lane is left. It is loaded reflectively, so it is only
+ * used if built with the 'vector' profile and run with --add-modules jdk.incubator.vector.
+ */
+class VectorKernel implements MandelbrotCalculator.RowKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED; // 4 lanes with AVX2, 8 with AVX-512
+
+    private final double[] laneOffsets = new double[SPECIES.length()]; // 0, 1, 2, ...
+    private final ThreadLocal<double[]> laneCounts = ThreadLocal.withInitial(() -> new double[SPECIES.length()]); // rows run on many workers
+
+    /**
+     * This creates a kernel for the widest vectors of this CPU.
+     */
+    VectorKernel() {
+        for (int lane = 0; lane < laneOffsets.length; lane++) {
+            laneOffsets[lane] = lane;
+        }
+    }
+
+    @Override
+    public void calcRow(int[] mandelbrotData, int offset, int xStart, int xEnd, double realIndex, double realStep, double realOffset,
+                        double cImaginary, int maxIterations, double radiusSquared, boolean interiorCheck) {
+        int lanes = SPECIES.length();
+        double[] counts = laneCounts.get();
+        DoubleVector offsets = DoubleVector.fromArray(SPECIES, laneOffsets, 0);
+        DoubleVector ci = DoubleVector.broadcast(SPECIES, cImaginary);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        for (int x = xStart; x < xEnd; x += lanes) {
+            VectorMask<Double> inRange = SPECIES.indexInRange(x, xEnd); // the last batch of the row may be partial
+            DoubleVector cr = offsets.add(realIndex + x).mul(realStep).add(realOffset); // the same rounding as 'PixelGrid.getReal', the sums of whole numbers are exact
+
+            VectorMask<Double> interior = SPECIES.maskAll(false);
+            if (interiorCheck) {
+                DoubleVector ci2 = ci.mul(ci);
+                DoubleVector shifted = cr.sub(0.25);
+                DoubleVector q = shifted.mul(shifted).add(ci2);
+                VectorMask<Double> cardioid = q.mul(q.add(shifted)).compare(VectorOperators.LT, ci2.mul(0.25));
+                DoubleVector bulbReal = cr.add(1);
+                VectorMask<Double> bulb = bulbReal.mul(bulbReal).add(ci2).compare(VectorOperators.LT, 0.0625);
+                interior = cardioid.or(bulb);
+            }
+
+            DoubleVector zr = zero;
+            DoubleVector zi = zero;
+            DoubleVector iterations = zero;
+            VectorMask<Double> active = inRange.andNot(interior);
+            for (int n = 0; n < maxIterations && active.anyTrue(); n++) {
+                DoubleVector zr2 = zr.mul(zr);
+                DoubleVector zi2 = zi.mul(zi);
+                VectorMask<Double> outside = zr2.add(zi2).compare(VectorOperators.GT, radiusSquared);
+                iterations = iterations.add(1, active); // counted before the escape test, as calcMandel does
+                active = active.andNot(outside);
+                DoubleVector nzi = zr.mul(2).mul(zi).add(ci);
+                zr = zr2.sub(zi2).add(cr);
+                zi = nzi;
+            }
+
+            iterations.blend(maxIterations, interior).intoArray(counts, 0);
+            int count = Math.min(lanes, xEnd - x);
+            for (int lane = 0; lane < count; lane++) {
+                mandelbrotData[offset + x + lane] = (int) counts[lane];
+            }
+        }
+    }
+}